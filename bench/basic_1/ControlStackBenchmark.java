@@ -0,0 +1,122 @@
+package basic_1;
+
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.util.Stack;
+import java.util.Vector;
+
+/**
+ * Compares the old synchronized control and DATA stores (java.util.Stack
+ * and java.util.Vector) with ControlStack and the DATA array used by
+ * Program now.
+ * <p>
+ * The work mimics gosub_calc.bas inside a FOR loop: every round pushes a
+ * FOR frame, does a GOSUB/RETURN pair through a nested GOSUB, runs the
+ * NEXT check and READs one DATA item. Only the stores are measured here,
+ * the "calc" workload of InterpreterBenchmark runs the same work as a
+ * BASIC program through the whole interpreter.
+ * <p>
+ * Run with: java -cp out basic_1.ControlStackBenchmark [rounds]
+ */
+public class ControlStackBenchmark
+{
+    private static final Statement FOR = dummy(KeyWords.FOR);
+    private static final Statement GOSUB = dummy(KeyWords.GOSUB);
+    private static final Token[] DATA = new Token[64];
+
+    private static Statement dummy (KeyWords k)
+    {
+        return new Statement(k)
+        {
+            @Override
+            protected Statement doit (Program pgm, InputStream in, PrintStream out)
+            {
+                return null;
+            }
+        };
+    }
+
+    /**
+     * The way Program used to do it: one synchronized call per operation
+     * and a boxed FOR statement that is popped and pushed again on NEXT.
+     */
+    private static long legacy (int rounds)
+    {
+        Stack<Statement> stack = new Stack<>();
+        Vector<Token> data = new Vector<>();
+        for (Token t : DATA)
+        {
+            data.addElement(t);
+        }
+        int ptr = 0;
+        long sum = 0;
+        stack.push(FOR);
+        for (int i = 0; i < rounds; i++)
+        {
+            stack.push(GOSUB);
+            stack.push(GOSUB);
+            sum += stack.pop().line;
+            sum += stack.pop().line;
+            Statement f = stack.pop();
+            stack.push(f);
+            if (ptr > data.size() - 1)
+            {
+                ptr = 0;
+            }
+            sum += (long) data.elementAt(ptr++).numValue();
+        }
+        return sum;
+    }
+
+    private static long current (int rounds)
+    {
+        ControlStack stack = new ControlStack();
+        Token[] data = DATA.clone();
+        int ptr = 0;
+        long sum = 0;
+        stack.pushFor(FOR, 1, rounds, 1);
+        for (int i = 0; i < rounds; i++)
+        {
+            stack.push(ControlStack.GOSUB, GOSUB);
+            stack.push(ControlStack.GOSUB, GOSUB);
+            sum += stack.pop().line;
+            sum += stack.pop().line;
+            if (stack.kind() == ControlStack.FOR && stack.step() != 0)
+            {
+                sum += (long) stack.peek().line;
+            }
+            if (ptr >= data.length)
+            {
+                ptr = 0;
+            }
+            sum += (long) data[ptr++].numValue();
+        }
+        return sum;
+    }
+
+    public static void main (String[] args)
+    {
+        int rounds = (args.length > 0) ? Integer.parseInt(args[0]) : 10_000_000;
+        for (int i = 0; i < DATA.length; i++)
+        {
+            DATA[i] = new Token(KeyWords.CONSTANT, (double) i);
+        }
+        long sink = 0;
+        // warm up both variants before measuring.
+        for (int i = 0; i < 5; i++)
+        {
+            sink += legacy(rounds / 10) + current(rounds / 10);
+        }
+        for (int i = 0; i < 5; i++)
+        {
+            long t0 = System.nanoTime();
+            sink += legacy(rounds);
+            long t1 = System.nanoTime();
+            sink += current(rounds);
+            long t2 = System.nanoTime();
+            System.out.printf("Stack/Vector: %6.1f ns/round   ControlStack/array: %6.1f ns/round%n",
+                    (t1 - t0) / (double) rounds, (t2 - t1) / (double) rounds);
+        }
+        System.out.println("(" + sink + ")");
+    }
+}
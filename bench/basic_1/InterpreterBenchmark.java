@@ -0,0 +1,184 @@
+package basic_1;
+
+import streameditor.ConsoleTerminal;
+import streameditor.Terminal;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Locale;
+
+/**
+ * Throughput benchmark for the basic_1 interpreter. Every workload is a
+ * small BASIC program that gets loaded once through Program.load() and then
+ * run over and over with Program.run(). Each workload runs a number of
+ * warm-up rounds first so HotSpot has compiled the interpreter before the
+ * measured rounds start.
+ * <p>
+ * Nothing here needs a display: AWT runs headless and the programs run on
+ * a ConsoleTerminal whose output goes to a sink.
+ * <p>
+ * Run with:
+ * <pre>
+ * java -cp out:lib/* basic_1.InterpreterBenchmark [-jit] [-warmup n] [-rounds n] [workload ...]
+ * </pre>
+ * Without workload names all workloads are run.
+ */
+public class InterpreterBenchmark
+{
+    private static final String[][] WORKLOADS = {
+            {"forloop",
+                    "10 s = 0\n" +
+                    "20 for i = 1 to 300\n" +
+                    "30 for j = 1 to 300\n" +
+                    "40 s = s + i * j - (i + j) / 2\n" +
+                    "50 next j\n" +
+                    "60 next i\n"},
+            {"gosub",
+                    "10 n = 0\n" +
+                    "20 for i = 1 to 30000\n" +
+                    "30 gosub 100\n" +
+                    "40 next i\n" +
+                    "50 end\n" +
+                    "100 n = n + 1\n" +
+                    "110 gosub 200\n" +
+                    "120 return\n" +
+                    "200 n = n - 0.5\n" +
+                    "210 return\n"},
+            {"strings",
+                    "10 for i = 1 to 200\n" +
+                    "20 a$ = \"\"\n" +
+                    "30 for j = 1 to 100\n" +
+                    "40 a$ = a$ + \"x\"\n" +
+                    "50 next j\n" +
+                    "60 next i\n"},
+            {"arrays",
+                    "10 dim a(100, 100)\n" +
+                    "20 for i = 1 to 100\n" +
+                    "30 for j = 1 to 100\n" +
+                    "40 a(i, j) = i + j\n" +
+                    "50 next j\n" +
+                    "60 next i\n" +
+                    "70 s = 0\n" +
+                    "80 for i = 1 to 100\n" +
+                    "90 for j = 1 to 100\n" +
+                    "100 s = s + a(j, i)\n" +
+                    "110 next j\n" +
+                    "120 next i\n"},
+            {"dataread",
+                    "10 data 1, 2, 3, 4, 5, 6, 7, 8, 9, 10\n" +
+                    "20 data 11, 12, 13, 14, 15, 16, 17, 18, 19, 20\n" +
+                    "30 s = 0\n" +
+                    "40 for i = 1 to 2000\n" +
+                    "50 restore\n" +
+                    "60 for j = 1 to 20\n" +
+                    "70 read x\n" +
+                    "80 s = s + x\n" +
+                    "90 next j\n" +
+                    "100 next i\n"},
+            // gosub_calc.bas in a FOR loop, the whole program version of
+            // what ControlStackBenchmark does with the bare stores.
+            {"calc",
+                    "10 data 1, 2, 3, 4, 5, 6, 7, 8, 9, 10\n" +
+                    "20 s = 0\n" +
+                    "30 for i = 1 to 20000\n" +
+                    "40 gosub 3 * 100 + 77\n" +
+                    "50 next i\n" +
+                    "60 end\n" +
+                    "377 gosub 10000 + 7\n" +
+                    "380 return\n" +
+                    "10007 restore\n" +
+                    "10008 read x\n" +
+                    "10009 s = s + x\n" +
+                    "10010 return\n"},
+    };
+
+    private static final PrintStream SINK = new PrintStream(new OutputStream()
+    {
+        @Override
+        public void write (int b)
+        {
+        }
+
+        @Override
+        public void write (byte[] b, int off, int len)
+        {
+        }
+    });
+
+    private static final InputStream NO_INPUT = new ByteArrayInputStream(new byte[0]);
+
+    /**
+     * Run one workload and print the average time of a run.
+     */
+    private static void measure (String name, String source, Terminal term,
+                                 boolean jit, int warmup, int rounds) throws Exception
+    {
+        Program pgm = Program.load(new ByteArrayInputStream(source.getBytes(StandardCharsets.US_ASCII)), term);
+        pgm.jit = jit;
+        for (int i = 0; i < warmup; i++)
+        {
+            pgm.run(NO_INPUT, SINK, 0);
+        }
+        double[] times = new double[rounds];
+        for (int i = 0; i < rounds; i++)
+        {
+            long t0 = System.nanoTime();
+            pgm.run(NO_INPUT, SINK, 0);
+            times[i] = (System.nanoTime() - t0) / 1e6;
+        }
+        double sum = 0;
+        for (double t : times)
+        {
+            sum += t;
+        }
+        double mean = sum / rounds;
+        double var = 0;
+        for (double t : times)
+        {
+            var += (t - mean) * (t - mean);
+        }
+        double dev = (rounds > 1) ? Math.sqrt(var / (rounds - 1)) : 0;
+        System.out.printf(Locale.ROOT, "%-10s %10.3f ms/run  +- %8.3f  (%d runs)%n", name, mean, dev, rounds);
+    }
+
+    public static void main (String[] args) throws Exception
+    {
+        System.setProperty("java.awt.headless", "true");
+        boolean jit = false;
+        int warmup = 20;
+        int rounds = 20;
+        ArrayList<String> selected = new ArrayList<>();
+        for (int i = 0; i < args.length; i++)
+        {
+            switch (args[i])
+            {
+                case "-jit":
+                    jit = true;
+                    break;
+                case "-warmup":
+                    warmup = Integer.parseInt(args[++i]);
+                    break;
+                case "-rounds":
+                    rounds = Integer.parseInt(args[++i]);
+                    break;
+                default:
+                    selected.add(args[i]);
+                    break;
+            }
+        }
+
+        Terminal term = new ConsoleTerminal(NO_INPUT, SINK);
+        System.out.println("JIT is " + (jit ? "on" : "off"));
+        for (String[] w : WORKLOADS)
+        {
+            if (selected.isEmpty() || selected.contains(w[0]))
+            {
+                measure(w[0], w[1], term, jit, warmup, rounds);
+            }
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package basic_1;
+
+import streameditor.ConsoleTerminal;
+
+import java.io.ByteArrayInputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * Load time benchmark for the basic_1 interpreter. A synthetic program of
+ * many lines, with the usual mix of statements, extra blanks and quoted
+ * strings, is loaded with Program.load() over and over. That covers
+ * the line normalizer, the tokenizer and the statement parser.
+ * <p>
+ * Run with:
+ * <pre>
+ * java -cp out:lib/* basic_1.LoadBenchmark [-lines n] [-warmup n] [-rounds n]
+ * </pre>
+ */
+public class LoadBenchmark
+{
+    private static final String[] TEMPLATES = {
+            "%d   LET A%d = ( B + 3 ) * 2.5 - C / 4",
+            "%d PRINT \"value  of  x:\" , X%d ; \" and y:  \" ,Y",
+            "%d FOR I = 1 TO %d STEP 2",
+            "%d NEXT I",
+            "%d IF A > %d AND B <= 7 THEN PRINT \"big\"",
+            "%d\tGOSUB %d",
+            "%d DATA 1, 2 , 3 ,4,  %d, 6",
+            "%d REM this is line %d of the benchmark",
+            "%d S$ = \"abc\" + MID$(T$, 2, %d) + CHR$(65)",
+            "%d DIM Q%d(10, 10)",
+    };
+
+    private static final PrintStream SINK = new PrintStream(new OutputStream()
+    {
+        @Override
+        public void write (int b)
+        {
+        }
+    });
+
+    /**
+     * Make a program of <i>lines</i> lines.
+     */
+    static byte[] makeSource (int lines)
+    {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < lines; i++)
+        {
+            int num = (i + 1) * 10;
+            sb.append(String.format(Locale.ROOT, TEMPLATES[i % TEMPLATES.length], num, i % 97 + 1)).append('\n');
+        }
+        return sb.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    public static void main (String[] args) throws Exception
+    {
+        System.setProperty("java.awt.headless", "true");
+        int lines = 10000;
+        int warmup = 10;
+        int rounds = 20;
+        for (int i = 0; i < args.length; i++)
+        {
+            switch (args[i])
+            {
+                case "-lines":
+                    lines = Integer.parseInt(args[++i]);
+                    break;
+                case "-warmup":
+                    warmup = Integer.parseInt(args[++i]);
+                    break;
+                case "-rounds":
+                    rounds = Integer.parseInt(args[++i]);
+                    break;
+                default:
+                    System.err.println("usage: LoadBenchmark [-lines n] [-warmup n] [-rounds n]");
+                    System.exit(2);
+            }
+        }
+
+        byte[] source = makeSource(lines);
+        ConsoleTerminal term = new ConsoleTerminal(new ByteArrayInputStream(new byte[0]), SINK);
+        for (int i = 0; i < warmup; i++)
+        {
+            Program.load(new ByteArrayInputStream(source), term);
+        }
+        double[] times = new double[rounds];
+        for (int i = 0; i < rounds; i++)
+        {
+            long t0 = System.nanoTime();
+            Program.load(new ByteArrayInputStream(source), term);
+            times[i] = (System.nanoTime() - t0) / 1e6;
+        }
+        double sum = 0;
+        for (double t : times)
+        {
+            sum += t;
+        }
+        double mean = sum / rounds;
+        double var = 0;
+        for (double t : times)
+        {
+            var += (t - mean) * (t - mean);
+        }
+        double dev = (rounds > 1) ? Math.sqrt(var / (rounds - 1)) : 0;
+        System.out.printf(Locale.ROOT, "%d lines  %10.3f ms/load  +- %8.3f  %10.0f lines/s  (%d runs)%n",
+                lines, mean, dev, lines / (mean / 1000), rounds);
+    }
+}
@@ -0,0 +1,108 @@
+package basic_1;
+
+import streameditor.ConsoleTerminal;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Checks that a renumbered program does what its listing does. Every
+ * program is loaded, renumbered in place and run; then its LIST output is
+ * loaded as a new program, the way SAVE and LOAD would, and run as well.
+ * Both runs have to print the same, errors included.
+ * <p>
+ * Run with:
+ * <pre>
+ * java -cp out:lib/* basic_1.RenumberCheck
+ * </pre>
+ * The exit code is 0 if every case passed, 1 otherwise.
+ */
+public class RenumberCheck
+{
+    private static final int START = 100;
+    private static final int STEP = 10;
+
+    private static final String[][] PROGRAMS = {
+            // computed targets, the optimizer folds them to constants.
+            {"computed", "10 goto 100+10\n" +
+                    "20 print \"twenty\":end\n" +
+                    "110 print \"one-ten\"\n" +
+                    "120 gosub 2*10\n"},
+            {"literal", "10 gosub 50\n" +
+                    "20 goto 40\n" +
+                    "30 print \"skipped\"\n" +
+                    "40 print \"forty\":end\n" +
+                    "50 print \"sub\":return\n"},
+            {"then", "10 i = 0\n" +
+                    "20 i = i + 1\n" +
+                    "30 if i < 3 then 20\n" +
+                    "40 if i = 3 then goto 60\n" +
+                    "50 print \"wrong\"\n" +
+                    "60 print i\n"},
+            {"on", "10 for i = 1 to 3\n" +
+                    "20 on i gosub 100, 200, 300\n" +
+                    "30 next i\n" +
+                    "40 end\n" +
+                    "100 print \"a\":return\n" +
+                    "200 print \"b\":return\n" +
+                    "300 print \"c\":return\n"},
+    };
+
+    private static final InputStream NO_INPUT = new ByteArrayInputStream(new byte[0]);
+
+    private static Program load (String source, PrintStream out) throws Exception
+    {
+        return Program.load(new ByteArrayInputStream(source.getBytes(StandardCharsets.US_ASCII)),
+                new ConsoleTerminal(NO_INPUT, out));
+    }
+
+    /**
+     * Run <i>pgm</i> and return what it printed, and the error it stopped
+     * with if any.
+     */
+    private static String run (Program pgm) throws Exception
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(bytes, true);
+        try
+        {
+            pgm.run(NO_INPUT, out, 0);
+        }
+        catch (BASICError e)
+        {
+            out.print("error: " + e.getMsg());
+        }
+        return bytes.toString("US-ASCII").trim().replace('\n', '|');
+    }
+
+    private static boolean check (String name, String source) throws Exception
+    {
+        Program pgm = load(source, System.out);
+        pgm = pgm.renumber(START, STEP);
+        ByteArrayOutputStream listing = new ByteArrayOutputStream();
+        PrintStream p = new PrintStream(listing, true);
+        pgm.list(p);
+        String renumbered = run(pgm);
+        String reloaded = run(load(listing.toString("US-ASCII"), System.out));
+
+        boolean ok = renumbered.equals(reloaded);
+        System.out.printf("%-9s %s%n", name, ok ? "ok  " + renumbered
+                : "DIFFERS renumbered: " + renumbered + "  reloaded: " + reloaded);
+        return ok;
+    }
+
+    public static void main (String[] args) throws Exception
+    {
+        System.setProperty("java.awt.headless", "true");
+        boolean ok = true;
+        for (String[] p : PROGRAMS)
+        {
+            ok &= check(p[0], p[1]);
+        }
+        System.out.println(ok ? "renumbered programs run like their listings" : "FAILED");
+        System.exit(ok ? 0 : 1);
+    }
+}
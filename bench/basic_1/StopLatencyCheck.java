@@ -0,0 +1,128 @@
+package basic_1;
+
+import streameditor.ConsoleTerminal;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * Checks that another thread can end a program that never ends by itself.
+ * Each program runs on a worker thread, the main thread asks it to stop
+ * (requestStop(), the stop button) or to end (requestKill(), closing the
+ * window), and run() has to return within BOUND_MS. A request made
+ * before the worker has started the program has to work as well.
+ * <p>
+ * Run with:
+ * <pre>
+ * java -cp out:lib/* basic_1.StopLatencyCheck
+ * </pre>
+ * The exit code is 0 if every case passed, 1 otherwise.
+ */
+public class StopLatencyCheck
+{
+    private static final long BOUND_MS = 200;
+    // how long the program spins before it is stopped.
+    private static final long SPIN_MS = 100;
+
+    private static final String[][] PROGRAMS = {
+            {"goto", "10 goto 10\n"},
+            {"gosub", "10 gosub 100\n" +
+                    "20 goto 10\n" +
+                    "100 return\n"},
+    };
+
+    private static final PrintStream SINK = new PrintStream(new OutputStream()
+    {
+        @Override
+        public void write (int b)
+        {
+        }
+
+        @Override
+        public void write (byte[] b, int off, int len)
+        {
+        }
+    });
+
+    private static final InputStream NO_INPUT = new ByteArrayInputStream(new byte[0]);
+
+    /**
+     * Run <i>source</i> on a worker, stop or kill it after <i>spin</i> ms,
+     * or before the worker starts if <i>spin</i> is negative, and return
+     * whether run() came back in time.
+     */
+    private static boolean check (String name, String source, boolean kill, long spin) throws Exception
+    {
+        Program pgm = Program.load(new ByteArrayInputStream(source.getBytes(StandardCharsets.US_ASCII)),
+                new ConsoleTerminal(NO_INPUT, SINK));
+        Throwable[] failure = new Throwable[1];
+        pgm.clearStopRequest();
+        Thread worker = new Thread(() ->
+        {
+            try
+            {
+                pgm.run(NO_INPUT, SINK, 0);
+            }
+            catch (BASICError e)
+            {
+                // the kill ends the program with an error, that is expected.
+                if (!kill)
+                {
+                    failure[0] = e;
+                }
+            }
+            catch (Throwable e)
+            {
+                failure[0] = e;
+            }
+        }, "basic-" + name);
+        worker.setDaemon(true);
+        if (spin >= 0)
+        {
+            worker.start();
+            Thread.sleep(spin);
+        }
+
+        long t0 = System.nanoTime();
+        if (kill)
+        {
+            pgm.requestKill();
+        }
+        else
+        {
+            pgm.requestStop();
+        }
+        if (spin < 0)
+        {
+            worker.start();
+        }
+        worker.join(BOUND_MS);
+        double ms = (System.nanoTime() - t0) / 1e6;
+
+        boolean ok = !worker.isAlive() && failure[0] == null;
+        System.out.printf(Locale.ROOT, "%-6s %-4s %-14s %8.3f ms  %s%n", name, kill ? "kill" : "stop",
+                (spin < 0) ? "before start" : "after " + spin + " ms", ms,
+                ok ? "ok" : worker.isAlive() ? "STILL RUNNING" : "FAILED " + failure[0]);
+        return ok;
+    }
+
+    public static void main (String[] args) throws Exception
+    {
+        System.setProperty("java.awt.headless", "true");
+        boolean ok = true;
+        for (String[] p : PROGRAMS)
+        {
+            for (boolean kill : new boolean[]{false, true})
+            {
+                ok &= check(p[0], p[1], kill, SPIN_MS);
+                ok &= check(p[0], p[1], kill, -1);
+            }
+        }
+        System.out.println(ok ? "all stopped within " + BOUND_MS + " ms" : "FAILED");
+        System.exit(ok ? 0 : 1);
+    }
+}
@@ -1,4 +1,4 @@
-10 def fn a(x,y) = 2*5x+3y
+10 def fn a(x,y) = 2*5*x+3*y
 20 def fn fuck(x) = 3*x
 30 for s = 0 to 5
 40 print "fuck"
@@ -6,6 +6,9 @@
 package applications;
 
 import basic_1.CommandInterpreter;
+import basic_1.Mailbox;
+import basic_1.Program;
+import basic_1.Signal;
 import streameditor.StreamingTextArea;
 import misc.MDIChild;
 import misc.Misc;
@@ -27,12 +30,6 @@ public class BasicGUI extends MDIChild implements Runnable, ActionListener, Inte
     public long threadID;
     private CommandInterpreter commandInterpreter;
 
-    /* sleep/wakeup map */
-    public static final
-        ConcurrentHashMap<Long, CountDownLatch> latchMap = new ConcurrentHashMap<>();
-    public static final
-        ConcurrentHashMap<Long, StreamingTextArea> streamMap = new ConcurrentHashMap<>();
-
     private boolean cbDirectInsertFlag;
 
     {
@@ -48,7 +45,7 @@ public class BasicGUI extends MDIChild implements Runnable, ActionListener, Inte
     {
         super();
         _fut = fut;
-        basicTask = Misc.execute(this); //FutureTask<?>) executor.submit(this);
+        basicTask = Misc.executeBasic(this); //FutureTask<?>) executor.submit(this);
     }
 
     /**
@@ -182,7 +179,7 @@ public class BasicGUI extends MDIChild implements Runnable, ActionListener, Inte
      */
     private void formInternalFrameClosed(javax.swing.event.InternalFrameEvent evt)//GEN-FIRST:event_formInternalFrameClosed
     {//GEN-HEADEREND:event_formInternalFrameClosed
-        commandInterpreter.basicProgram.thread_running = false;  // Force basicThread to end if pg runs
+        commandInterpreter.basicProgram.requestKill();  // Force basicThread to end if pg runs
         StreamingTextArea st = area;
         st.fakeIn("bye\n");  // Force basicThread to end if no pg runs
     }//GEN-LAST:event_formInternalFrameClosed
@@ -203,7 +200,7 @@ public class BasicGUI extends MDIChild implements Runnable, ActionListener, Inte
             throw new RuntimeException(e);
         }
         basicTask.cancel(true);
-        commandInterpreter.basicProgram.basic_prg_running = false;
+        commandInterpreter.basicProgram.requestStop();
     }//GEN-LAST:event_jButton2ActionPerformed
 
 
@@ -233,7 +230,7 @@ public class BasicGUI extends MDIChild implements Runnable, ActionListener, Inte
             System.err.println("before ST creation");
 
             //StreamingTextArea st = area;
-            streamMap.put (threadID, area);
+            Program.streamMap.put (threadID, area);
 
             System.err.println("before interpreter start");
 
@@ -261,8 +258,9 @@ public class BasicGUI extends MDIChild implements Runnable, ActionListener, Inte
         runBasicSystem();
 
         commandInterpreter.dispose();
-        latchMap.remove(threadID);
-        streamMap.remove(threadID);
+        Program.streamMap.remove(threadID);
+        Mailbox.remove(threadID);
+        Signal.remove(threadID);
         //SwingUtilities.invokeLater (this::dispose);
         System.out.println("BasicThread end");
     }
@@ -45,6 +45,16 @@ class BASICError extends RuntimeException
         s = thisStatement;
     }
 
+    /**
+     * Tell the error the statement it occurred in, unless it already knows.
+     * Returns the error itself, so it can be rethrown as it is.
+     */
+    BASICError at(Statement thisStatement) {
+        if (s == null)
+            s = thisStatement;
+        return this;
+    }
+
     /**
      * Once caught, you can use this method to get a string representation
      * of the error you've caught.
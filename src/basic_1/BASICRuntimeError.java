@@ -18,7 +18,11 @@
 package basic_1;
 
 /**
- * Thrown by the parser if it can't parse an input line.
+ * Thrown when a program fails while it runs. These errors carry no stack
+ * trace: they report a BASIC line, not a place in the interpreter, and
+ * programs that run into errors a lot would spend most of their time
+ * filling in stack traces. The statement is attached once, by the loop
+ * that runs the program, see BASICError.at().
  */
 public class BASICRuntimeError extends BASICError 
 {
@@ -34,6 +38,29 @@ public class BASICRuntimeError extends BASICError
         super(thisStatement, errorMessage);
     }
 
+    /**
+     * A runtime error in <i>thisStatement</i> caused by a Java exception,
+     * which keeps its stack trace.
+     */
+    BASICRuntimeError (Statement thisStatement, Exception cause) {
+        super(thisStatement, "Java Error: " + cause);
+        initCause(cause);
+    }
+
+    @Override
+    BASICRuntimeError at(Statement thisStatement) {
+        super.at(thisStatement);
+        return this;
+    }
+
+    /**
+     * No stack trace, see above.
+     */
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return this;
+    }
+
     /**
      * Return the runtime error message.
      */
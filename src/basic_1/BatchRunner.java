@@ -0,0 +1,82 @@
+package basic_1;
+
+import streameditor.ConsoleTerminal;
+
+import java.io.IOException;
+
+/**
+ * Runs BASIC programs without a GUI. Every file named on the command line
+ * is loaded and run in turn on a ConsoleTerminal attached to stdin and
+ * stdout. Swing and AWT are never touched, so this works on a headless
+ * server.
+ * <p>
+ * Usage: java -cp ... basic_1.BatchRunner [-jit] [-profile] file.bas [file.bas ...]
+ * <p>
+ * The exit code is 0 if all programs ran, 1 if one failed to load or
+ * stopped with an error, and 2 for a usage error.
+ */
+public class BatchRunner {
+
+    /**
+     * Load and run one program file, with the JIT if <i>jit</i> is set and
+     * printing a profile to stderr if <i>profiling</i> is set. Returns false
+     * if it failed.
+     */
+    static boolean runFile(String file, ConsoleTerminal term, boolean jit, boolean profiling) {
+        Program pgm;
+        try {
+            pgm = Program.load(file, term);
+        } catch (IOException e) {
+            System.err.println(file + ": " + e.getMessage());
+            return false;
+        } catch (BASICSyntaxError e) {
+            System.err.println(file + ": syntax error" + e.getMsg());
+            return false;
+        }
+        pgm.jit = jit;
+        pgm.profiling = profiling;
+        try {
+            pgm.run(term.getInputStream(), term.getPrintStream(), 0);
+        } catch (BASICError | IOException e) {
+            term.getPrintStream().flush();
+            System.err.println(file + ":" + ((e instanceof BASICError) ? ((BASICError) e).getMsg() : " " + e));
+            return false;
+        } finally {
+            term.getPrintStream().flush();
+            if (profiling) {
+                System.err.println(file + ":");
+                pgm.profile(20, System.err);
+            }
+        }
+        return true;
+    }
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        ConsoleTerminal term = new ConsoleTerminal(System.in, System.out);
+        Program.streamMap.put(Thread.currentThread().getId(), term);
+
+        int files = 0;
+        boolean ok = true;
+        boolean jit = false;
+        boolean profiling = false;
+        for (String arg : args) {
+            if (arg.equals("-jit")) {
+                jit = true;
+                continue;
+            }
+            if (arg.equals("-profile")) {
+                profiling = true;
+                continue;
+            }
+            files++;
+            ok &= runFile(arg, term, jit, profiling);
+        }
+        if (files == 0) {
+            System.err.println("usage: BatchRunner [-jit] [-profile] file.bas [file.bas ...]");
+            System.exit(2);
+        }
+        // the cached thread pool in misc.Misc would keep the JVM alive.
+        System.exit(ok ? 0 : 1);
+    }
+}
@@ -48,6 +48,9 @@ public class CommandInterpreter {
     transient private PrintStream outStream;
 
     final transient private BasicGUI m_bg;
+    // JIT and profiling settings of this window, every program it runs gets them.
+    private boolean jit = Boolean.getBoolean("basic.jit");
+    private boolean profiling = Boolean.getBoolean("basic.profile");
 
     /**
      * Create a new command interpreter attached to the passed in streams.
@@ -56,12 +59,23 @@ public class CommandInterpreter {
         m_bg = bg;
     }
 
+    /**
+     * Get <i>pgm</i> ready to run with the settings of this window.
+     */
+    private void startRun(Program pgm) {
+        // a stop pressed while nothing ran is not meant for this run.
+        pgm.clearStopRequest();
+        pgm.jit = jit;
+        pgm.profiling = profiling;
+    }
+
     // This method basically dispatches the commands of the command interpreter.
     private Program processCommand(Program pgm, LexicalTokenizer lt, Token x) throws BASICError, IOException {
         Token t;
 
         switch (x.kwValue) {
             case CMD_RESUME:
+                startRun(pgm);
                 try {
                     pgm.resume(inStream, outStream);
                 } catch (BASICRuntimeError e) {
@@ -70,6 +84,7 @@ public class CommandInterpreter {
                 return pgm;
 
             case CMD_CONT:
+                startRun(pgm);
                 try {
                     pgm.cont(inStream, outStream);
                 } catch (BASICRuntimeError e) {
@@ -85,6 +100,7 @@ public class CommandInterpreter {
                 }
                 //System.out.println("before run"); // +++++++++++++++++++++++++
                 streamingTextArea.startRunMode();
+                startRun(pgm);
                 try {
                     pgm.run(inStream, outStream, startline);
                 } catch (BASICRuntimeError e2) {
@@ -109,6 +125,36 @@ public class CommandInterpreter {
                 }
                 return pgm;
 
+            case CMD_JIT:
+                t = lt.nextToken();
+                if (t.typeNum() == KeyWords.CONSTANT) {
+                    jit = t.numValue() != 0;
+                }
+                outStream.println("JIT is " + (jit ? "on" : "off"));
+                return pgm;
+
+            case CMD_PROFILE:
+                t = lt.nextToken();
+                if (t.typeNum() == KeyWords.KEYWORD && t.kwValue == KeyWords.ON) {
+                    profiling = true;
+                } else if (t.typeNum() == KeyWords.VARIABLE && ((Variable) t).name.equals("off")) {
+                    profiling = false;
+                } else {
+                    pgm.profile((t.typeNum() == KeyWords.CONSTANT) ? (int) t.numValue() : 20, outStream);
+                    return pgm;
+                }
+                outStream.println("Profiling is " + (profiling ? "on" : "off"));
+                return pgm;
+
+            case CMD_SCROLLBACK:
+                t = lt.nextToken();
+                if (t.typeNum() == KeyWords.CONSTANT) {
+                    streamingTextArea.setScrollback((int) t.numValue());
+                }
+                int lines = streamingTextArea.getScrollback();
+                outStream.println("Scrollback is " + ((lines == 0) ? "unlimited" : lines + " lines"));
+                return pgm;
+
             case CMD_INSTRLIST:
                 Instrument[] instr = Objects.requireNonNull(MidiSynthSystem.get()).getInstruments();
                 StringBuilder sb = new StringBuilder();
@@ -204,8 +250,8 @@ public class CommandInterpreter {
                 Point pt = get2Val(lt, new Point(10, 10));
                 try {
                     return pgm.renumber(pt.x, pt.y);
-                } catch (NullPointerException e) {
-                    outStream.println("Could not renumber");
+                } catch (BASICRuntimeError e) {
+                    outStream.println("Could not renumber: " + e.getMsg());
                     return pgm;
                 }
 
@@ -264,14 +310,14 @@ public class CommandInterpreter {
         inStream = new DataInputStream(area.getInputStream());
         outStream = new PrintStream(area.getOutputStream());
 
-        if (tokenizer == null) {
-            System.out.println("create Tokenizer");
-            tokenizer = new LexicalTokenizer();
-        }
         if (basicProgram == null) {
             System.out.println("create BASIC prog");
             basicProgram = new Program(area);
         }
+        if (tokenizer == null) {
+            System.out.println("create Tokenizer");
+            tokenizer = new LexicalTokenizer(basicProgram.slots);
+        }
 
         outStream.println("*JavaBasic*\nType CMDS or CMDS \"abc\" to see commands (beginning with abc)\n");
     }
@@ -282,6 +328,8 @@ public class CommandInterpreter {
 
             m_bg.setLineInList(lineData);
 
+            // the names of a line belong to the program it is typed into.
+            tokenizer.useSlots(basicProgram.slots);
             tokenizer.feedNewLine(lineData);
 
             if (!tokenizer.hasMoreTokens()) {
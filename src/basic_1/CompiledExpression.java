@@ -0,0 +1,47 @@
+package basic_1;
+
+/**
+ * Base class of the expression classes generated by ExpressionCompiler.
+ * <p>
+ * A generated class overrides value() with straight JVM bytecode for the
+ * numeric part of an expression tree. Sub-trees the compiler doesn't handle
+ * (functions, strings, arrays ...) are kept in the <i>escapes</i> array and
+ * evaluated by the tree interpreter, scalar variables are fetched from the
+ * program through the <i>vars</i> array.
+ */
+public abstract class CompiledExpression
+{
+    protected final Expression[] escapes;
+    protected final Variable[] vars;
+
+    protected CompiledExpression (Expression[] escapes, Variable[] vars)
+    {
+        this.escapes = escapes;
+        this.vars = vars;
+    }
+
+    /**
+     * Evaluate the compiled expression in the context of <i>pgm</i>.
+     */
+    public abstract double value (Program pgm) throws BASICRuntimeError;
+
+    /**
+     * Division with the same zero check as the interpreter.
+     */
+    public static double div (double a, double b) throws BASICRuntimeError
+    {
+        if (b == 0)
+        {
+            throw new BASICRuntimeError("divide by zero!");
+        }
+        return a / b;
+    }
+
+    /**
+     * Boolean exclusive or, 1.0 == true.
+     */
+    public static double bxor (double a, double b)
+    {
+        return ((a == 1.0) ^ (b == 1.0)) ? 1.0 : 0.0;
+    }
+}
@@ -69,6 +69,19 @@ public class ConstantExpression extends Expression
         return "" + v;
     }
 
+    @Override
+    void appendTo (Program pgm, StringBuilder sb, int lineStart)
+    {
+        if (strCons != null)
+        {
+            sb.append(strCons);
+        }
+        else
+        {
+            sb.append(v);
+        }
+    }
+
     public boolean isString ()
     {
         return (strCons != null);
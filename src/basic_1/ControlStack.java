@@ -0,0 +1,128 @@
+package basic_1;
+
+import java.util.Arrays;
+
+/**
+ * The control stack of a running program. It holds one frame for every
+ * active GOSUB, FOR, DO and STOP. A program only ever runs on one thread,
+ * so unlike java.util.Stack nothing here is synchronized.
+ * <p>
+ * Frames are kept in parallel arrays: the statement that opened the frame,
+ * its kind and, for FOR frames, the loop bounds that were evaluated when
+ * the FOR statement ran. Pushing a frame doesn't allocate anything once
+ * the arrays have grown to the program's nesting depth.
+ */
+public final class ControlStack
+{
+    // frame kinds
+    public static final byte GOSUB = 0;
+    public static final byte FOR = 1;
+    public static final byte DO = 2;
+    public static final byte STOP = 3;
+
+    private Statement[] stmts = new Statement[16];
+    private byte[] kinds = new byte[16];
+    private double[] starts = new double[16];
+    private double[] ends = new double[16];
+    private double[] steps = new double[16];
+    private int top = 0;
+
+    /**
+     * Push a frame of kind <i>kind</i> for statement <i>s</i>.
+     */
+    public void push (byte kind, Statement s)
+    {
+        if (top == stmts.length)
+        {
+            grow();
+        }
+        stmts[top] = s;
+        kinds[top++] = kind;
+    }
+
+    /**
+     * Push a FOR frame with its loop bounds.
+     */
+    public void pushFor (Statement s, double start, double end, double step)
+    {
+        if (top == stmts.length)
+        {
+            grow();
+        }
+        stmts[top] = s;
+        kinds[top] = FOR;
+        starts[top] = start;
+        ends[top] = end;
+        steps[top++] = step;
+    }
+
+    /**
+     * Remove the top frame and return its statement, or null if the stack
+     * is empty.
+     */
+    public Statement pop ()
+    {
+        if (top == 0)
+        {
+            return null;
+        }
+        Statement s = stmts[--top];
+        stmts[top] = null;
+        return s;
+    }
+
+    /**
+     * Return the statement of the top frame, or null if the stack is empty.
+     */
+    public Statement peek ()
+    {
+        return (top == 0) ? null : stmts[top - 1];
+    }
+
+    /**
+     * Return the kind of the top frame. The stack must not be empty.
+     */
+    public byte kind ()
+    {
+        return kinds[top - 1];
+    }
+
+    /**
+     * Loop bounds of the top frame, which must be a FOR frame.
+     */
+    public double start ()
+    {
+        return starts[top - 1];
+    }
+
+    public double end ()
+    {
+        return ends[top - 1];
+    }
+
+    public double step ()
+    {
+        return steps[top - 1];
+    }
+
+    public boolean isEmpty ()
+    {
+        return top == 0;
+    }
+
+    public void clear ()
+    {
+        Arrays.fill(stmts, 0, top, null);
+        top = 0;
+    }
+
+    private void grow ()
+    {
+        int size = stmts.length * 2;
+        stmts = Arrays.copyOf(stmts, size);
+        kinds = Arrays.copyOf(kinds, size);
+        starts = Arrays.copyOf(starts, size);
+        ends = Arrays.copyOf(ends, size);
+        steps = Arrays.copyOf(steps, size);
+    }
+}
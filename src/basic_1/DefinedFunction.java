@@ -0,0 +1,89 @@
+package basic_1;
+
+/**
+ * A function made with DEF FN. The body is parsed once, when the DEF line
+ * is loaded, into an ordinary Expression tree. The parameters are plain
+ * variables: a call evaluates the arguments, binds them to the parameter
+ * slots for the time the body runs and then puts the old values back. So
+ * the body sees all other program variables, and a function can have any
+ * number of parameters.
+ * <p>
+ * Syntax: DEF FN name(p1, p2, ...) = expression, or DEF FNname(...) = ...
+ */
+public final class DefinedFunction
+{
+    // name as used by a call, e.g. "fnsq".
+    final String name;
+    // slot of the name, the program keeps its functions by it.
+    final int slot;
+    final Variable[] params;
+    final Expression body;
+
+    private DefinedFunction (String name, int slot, Variable[] params, Expression body)
+    {
+        this.name = name;
+        this.slot = slot;
+        this.params = params;
+        this.body = body;
+    }
+
+    /**
+     * Parse the rest of a DEF statement.
+     */
+    public static DefinedFunction parse (LexicalTokenizer lt) throws BASICSyntaxError
+    {
+        String fname;
+        Token t = lt.nextToken();
+        if ((t.typeNum() == KeyWords.FUNCTION) && (KeyWords.values()[(int) t.numValue()] == KeyWords.FN))
+        {
+            // DEF FN name(...), the tokenizer took FN as a keyword.
+            t = lt.nextToken();
+            if (t.typeNum() != KeyWords.VARIABLE)
+            {
+                throw new BASICSyntaxError("Malformed DEF FN");
+            }
+            fname = "fn" + ((Variable) t).name;
+        }
+        else if ((t.typeNum() == KeyWords.VARIABLE) && ((Variable) t).name.startsWith("fn"))
+        {
+            fname = ((Variable) t).name;
+        }
+        else
+        {
+            throw new BASICSyntaxError("missing FN");
+        }
+        Variable head = (Variable) t;
+        if (head.isString())
+        {
+            throw new BASICSyntaxError("String functions are not supported.");
+        }
+
+        Variable[] params = new Variable[head.numExpn()];
+        if (params.length == 0)
+        {
+            throw new BASICSyntaxError("Malformed DEF FN");
+        }
+        for (int i = 0; i < params.length; i++)
+        {
+            Expression e = head.expn(i);
+            Variable p = (e instanceof VariableExpression) ? ((VariableExpression) e).variable() : null;
+            if ((p == null) || p.isArray() || p.isString() || p.isFunction())
+            {
+                throw new BASICSyntaxError("Function parameters must be numeric variables.");
+            }
+            params[i] = p;
+        }
+
+        t = lt.nextToken();
+        if (!t.isOp(KeyWords.OP_EQ))
+        {
+            throw new BASICSyntaxError("missing =");
+        }
+        Expression body = ParseExpression.expression(lt);
+        if (body.isString())
+        {
+            throw new BASICSyntaxError("String functions are not supported.");
+        }
+        return new DefinedFunction(fname, lt.slotOf(fname), params, body);
+    }
+}
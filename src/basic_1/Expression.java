@@ -36,10 +36,16 @@ import java.io.PrintStream;
 public class Expression
 {
 
-Expression arg1;
+    Expression arg1;
     Expression arg2;
     KeyWords oper;
 
+    // set by the parser on the top node of an expression, only those
+    // are counted and handed to the ExpressionCompiler when hot.
+    boolean root;
+    private int hits;
+    private CompiledExpression compiled;
+
     Expression ()
     {
     }
@@ -102,6 +108,33 @@ Expression arg1;
      * is equivalent to false.
      */
     public double value (Program pgm) throws BASICRuntimeError
+    {
+        if (root)
+        {
+            pgm.epoch++;
+        }
+        if (root && pgm.jit)
+        {
+            if (compiled != null)
+            {
+                return compiled.value(pgm);
+            }
+            if (++hits == ExpressionCompiler.THRESHOLD)
+            {
+                compiled = ExpressionCompiler.compile(this);
+                if (compiled != null)
+                {
+                    return compiled.value(pgm);
+                }
+            }
+        }
+        return interpret(pgm);
+    }
+
+    /**
+     * Evaluate this node by walking the tree.
+     */
+    double interpret (Program pgm) throws BASICRuntimeError
     {
         switch (oper)
         {
@@ -112,11 +145,17 @@ Expression arg1;
             case OP_MUL:
                 return arg1.value(pgm) * arg2.value(pgm);
             case OP_DIV:
-                if (arg2.value(pgm) == 0)
+            {
+                // left to right like the other operators, the divisor is
+                // checked once both sides are known.
+                double dividend = arg1.value(pgm);
+                double divisor = arg2.value(pgm);
+                if (divisor == 0)
                 {
                     throw new BASICRuntimeError("divide by zero!");
                 }
-                return arg1.value(pgm) / arg2.value(pgm);
+                return dividend / divisor;
+            }
             case OP_XOR:
                 return ((long) arg1.value(pgm)) ^ ((long) arg2.value(pgm));
             case OP_IOR:
@@ -159,6 +198,36 @@ Expression arg1;
         throw new BASICRuntimeError("No String representation for this.");
     }
 
+    /**
+     * Append the string value of this expression to <i>sb</i>. The print
+     * column, which TAB needs, is sb.length() - <i>lineStart</i>. String
+     * operators override this so nested concatenations build their result
+     * in one buffer without intermediate strings.
+     */
+    void appendTo (Program pgm, StringBuilder sb, int lineStart) throws BASICRuntimeError
+    {
+        sb.append(stringValue(pgm, sb.length() - lineStart));
+    }
+
+    /**
+     * Evaluate this expression with appendTo() on the program's string
+     * buffer, starting at print column <i>c</i>, and return the result.
+     */
+    final String buildString (Program pgm, int c) throws BASICRuntimeError
+    {
+        StringBuilder sb = pgm.stringBuffer();
+        int start = sb.length();
+        try
+        {
+            appendTo(pgm, sb, start - c);
+            return sb.substring(start);
+        }
+        finally
+        {
+            sb.setLength(start);
+        }
+    }
+
     public String stringValue (Program pgm) throws BASICRuntimeError
     {
         throw new BASICRuntimeError("No String representation for this.");
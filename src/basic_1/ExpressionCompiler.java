@@ -0,0 +1,617 @@
+package basic_1;
+
+import misc.ByteArrayClassLoader;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Translates the numeric part of an expression tree into a JVM class that
+ * extends CompiledExpression. The class is written by hand as a version 49
+ * class file (no stack map frames needed) and loaded through a
+ * ByteArrayClassLoader.
+ * <p>
+ * Arithmetic, bit and boolean operators as well as numeric constants and
+ * scalar variables are compiled. Everything else becomes an escape back into
+ * the tree interpreter, so the generated code always computes the same value
+ * as Expression.value() does.
+ * <p>
+ * Small trees are left to the interpreter. Once HotSpot has compiled the
+ * tree walker, "N + 1" costs about as much walked as it does through a
+ * generated class, and every generated class adds a call HotSpot can't
+ * inline; in the benchmark that made GOSUB loops slower with the JIT on.
+ */
+final class ExpressionCompiler
+{
+    /**
+     * Number of evaluations of a root expression before it gets compiled.
+     */
+    static final int THRESHOLD = 1000;
+    /**
+     * Fewest compiled operators a tree needs to be worth a class.
+     */
+    static final int MIN_OPERATORS = 3;
+
+    private static final String BASE = "basic_1/CompiledExpression";
+    private static final String EXPRESSION = "basic_1/Expression";
+    private static final String VARIABLE = "basic_1/Variable";
+    private static final String PROGRAM = "basic_1/Program";
+    private static final String INIT_DESC = "([L" + EXPRESSION + ";[L" + VARIABLE + ";)V";
+    private static final String VALUE_DESC = "(L" + PROGRAM + ";)D";
+    // branch offsets are signed 16 bit values.
+    private static final int MAX_CODE = 32000;
+
+    private static final AtomicInteger serial = new AtomicInteger();
+
+    private final ArrayList<Expression> escapes = new ArrayList<>();
+    private final ArrayList<Variable> vars = new ArrayList<>();
+
+    // constant pool
+    private final ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+    private final DataOutputStream pool = new DataOutputStream(poolBytes);
+    private final HashMap<String, Integer> poolIndex = new HashMap<>();
+    private int poolCount = 1;
+
+    // code of the value() method
+    private byte[] code = new byte[256];
+    private int pc = 0;
+    private int stack = 0;
+    private int maxStack = 0;
+
+    private ExpressionCompiler ()
+    {
+    }
+
+    /**
+     * Compile <i>root</i>. Returns null if the expression can't be compiled,
+     * the caller then simply keeps interpreting it.
+     */
+    static CompiledExpression compile (Expression root)
+    {
+        if (!isCompiled(root) || operators(root) < MIN_OPERATORS)
+        {
+            return null;
+        }
+        try
+        {
+            ExpressionCompiler c = new ExpressionCompiler();
+            String name = "basic_1.Jit$" + serial.incrementAndGet();
+            byte[] clazz = c.classFile(name.replace('.', '/'), root);
+            Class<?> cl = new ByteArrayClassLoader(clazz).loadClass(name);
+            return (CompiledExpression) cl
+                    .getConstructor(Expression[].class, Variable[].class)
+                    .newInstance(c.escapes.toArray(new Expression[0]),
+                            c.vars.toArray(new Variable[0]));
+        }
+        catch (Exception | LinkageError e)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * Return true if <i>e</i> itself is translated to bytecode rather than
+     * being evaluated through an escape.
+     */
+    private static boolean isCompiled (Expression e)
+    {
+        if (e instanceof ConstantExpression)
+        {
+            return !e.isString();
+        }
+        if (e instanceof VariableExpression)
+        {
+            Variable v = ((VariableExpression) e).variable();
+            return !(v.isString() || v.isArray() || v.isFunction());
+        }
+        if (e.getClass() == BooleanExpression.class)
+        {
+            if (e.arg1 != null && (e.arg1.isString() || e.arg2.isString()))
+            {
+                return false;
+            }
+        }
+        else if (e.getClass() != Expression.class)
+        {
+            return false;
+        }
+        switch (e.oper)
+        {
+            case OP_ADD:
+            case OP_SUB:
+            case OP_MUL:
+            case OP_DIV:
+            case OP_EXP:
+            case OP_XOR:
+            case OP_IOR:
+            case OP_AND:
+            case OP_EQ:
+            case OP_NE:
+            case OP_LT:
+            case OP_LE:
+            case OP_GT:
+            case OP_GE:
+            case OP_BAND:
+            case OP_BIOR:
+            case OP_BXOR:
+                return e.arg1 != null && e.arg2 != null;
+            case OP_BNOT:
+            case OP_NOT:
+            case OP_NEG:
+                return e.arg2 != null;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Count the operators of <i>e</i> that would be compiled.
+     */
+    private static int operators (Expression e)
+    {
+        if (e == null || !isCompiled(e) || e instanceof ConstantExpression || e instanceof VariableExpression)
+        {
+            return 0;
+        }
+        return 1 + operators(e.arg1) + operators(e.arg2);
+    }
+
+    /**
+     * Emit code that leaves the value of <i>e</i> on the operand stack.
+     */
+    private void gen (Expression e)
+    {
+        if (!isCompiled(e))
+        {
+            // this.escapes[n].value(pgm)
+            emit(0x2a, 1);                                   // aload_0
+            emit(0xb4, 0);                                   // getfield
+            emit2(fieldRef(BASE, "escapes", "[L" + EXPRESSION + ";"));
+            pushInt(escapes.size());
+            emit(0x32, -1);                                  // aaload
+            emit(0x2b, 1);                                   // aload_1
+            emit(0xb6, 0);                                   // invokevirtual
+            emit2(methodRef(EXPRESSION, "value", VALUE_DESC));
+            escapes.add(e);
+            return;
+        }
+        if (e instanceof ConstantExpression)
+        {
+            pushDouble(e.value(null));
+            return;
+        }
+        if (e instanceof VariableExpression)
+        {
+            // pgm.getVariable(this.vars[n])
+            emit(0x2b, 1);                                   // aload_1
+            emit(0x2a, 1);                                   // aload_0
+            emit(0xb4, 0);                                   // getfield
+            emit2(fieldRef(BASE, "vars", "[L" + VARIABLE + ";"));
+            pushInt(vars.size());
+            emit(0x32, -1);                                  // aaload
+            emit(0xb6, 0);                                   // invokevirtual
+            emit2(methodRef(PROGRAM, "getVariable", "(L" + VARIABLE + ";)D"));
+            vars.add(((VariableExpression) e).variable());
+            return;
+        }
+        switch (e.oper)
+        {
+            case OP_ADD:
+                binary(e, 0x63);                             // dadd
+                break;
+            case OP_SUB:
+                binary(e, 0x67);                             // dsub
+                break;
+            case OP_MUL:
+                binary(e, 0x6b);                             // dmul
+                break;
+            case OP_DIV:
+                gen(e.arg1);
+                gen(e.arg2);
+                invokeStatic(BASE, "div", "(DD)D", -2);
+                break;
+            case OP_EXP:
+                gen(e.arg1);
+                gen(e.arg2);
+                invokeStatic("java/lang/Math", "pow", "(DD)D", -2);
+                break;
+            case OP_XOR:
+                bitwise(e, 0x83);                            // lxor
+                break;
+            case OP_IOR:
+                bitwise(e, 0x81);                            // lor
+                break;
+            case OP_AND:
+                bitwise(e, 0x7f);                            // land
+                break;
+            case OP_NOT:
+                gen(e.arg2);
+                emit(0x8f, 0);                               // d2l
+                emit(0x14, 2);                               // ldc2_w -1L
+                emit2(longConst(-1L));
+                emit(0x83, -2);                              // lxor
+                emit(0x8a, 0);                               // l2d
+                break;
+            case OP_NEG:
+                emit(0x0e, 2);                               // dconst_0
+                gen(e.arg2);
+                emit(0x67, -2);                              // dsub
+                break;
+            case OP_EQ:
+                compare(e, 0x97, 0x9a);                      // dcmpl, ifne
+                break;
+            case OP_NE:
+                compare(e, 0x97, 0x99);                      // dcmpl, ifeq
+                break;
+            case OP_LT:
+                compare(e, 0x98, 0x9c);                      // dcmpg, ifge
+                break;
+            case OP_LE:
+                compare(e, 0x98, 0x9d);                      // dcmpg, ifgt
+                break;
+            case OP_GT:
+                compare(e, 0x97, 0x9e);                      // dcmpl, ifle
+                break;
+            case OP_GE:
+                compare(e, 0x97, 0x9b);                      // dcmpl, iflt
+                break;
+            case OP_BAND:
+            {
+                // (a == 1.0) && (b == 1.0)
+                isOne(e.arg1);
+                int f1 = branch(0x9a, -1);                   // ifne
+                isOne(e.arg2);
+                int f2 = branch(0x9a, -1);                   // ifne
+                emit(0x0f, 2);                               // dconst_1
+                int end = branch(0xa7, 0);                   // goto
+                stack -= 2;
+                patch(f1);
+                patch(f2);
+                emit(0x0e, 2);                               // dconst_0
+                patch(end);
+                break;
+            }
+            case OP_BIOR:
+            {
+                // (a == 1.0) || (b == 1.0)
+                isOne(e.arg1);
+                int t1 = branch(0x99, -1);                   // ifeq
+                isOne(e.arg2);
+                int f2 = branch(0x9a, -1);                   // ifne
+                patch(t1);
+                emit(0x0f, 2);                               // dconst_1
+                int end = branch(0xa7, 0);                   // goto
+                stack -= 2;
+                patch(f2);
+                emit(0x0e, 2);                               // dconst_0
+                patch(end);
+                break;
+            }
+            case OP_BXOR:
+                gen(e.arg1);
+                gen(e.arg2);
+                invokeStatic(BASE, "bxor", "(DD)D", -2);
+                break;
+            case OP_BNOT:
+            {
+                // (b == 1.0) ? 0.0 : 1.0
+                isOne(e.arg2);
+                int one = branch(0x9a, -1);                  // ifne
+                emit(0x0e, 2);                               // dconst_0
+                int end = branch(0xa7, 0);                   // goto
+                stack -= 2;
+                patch(one);
+                emit(0x0f, 2);                               // dconst_1
+                patch(end);
+                break;
+            }
+            default:
+                throw new IllegalStateException("not compiled: " + e.oper);
+        }
+    }
+
+    private void binary (Expression e, int op)
+    {
+        gen(e.arg1);
+        gen(e.arg2);
+        emit(op, -2);
+    }
+
+    private void bitwise (Expression e, int op)
+    {
+        gen(e.arg1);
+        emit(0x8f, 0);                                       // d2l
+        gen(e.arg2);
+        emit(0x8f, 0);                                       // d2l
+        emit(op, -2);
+        emit(0x8a, 0);                                       // l2d
+    }
+
+    /**
+     * Compare both arguments and turn the result into 1.0 or 0.0.
+     * <i>jumpFalse</i> is the int branch taken when the relation is false.
+     */
+    private void compare (Expression e, int cmp, int jumpFalse)
+    {
+        gen(e.arg1);
+        gen(e.arg2);
+        emit(cmp, -3);
+        int f = branch(jumpFalse, -1);
+        emit(0x0f, 2);                                       // dconst_1
+        int end = branch(0xa7, 0);                           // goto
+        stack -= 2;
+        patch(f);
+        emit(0x0e, 2);                                       // dconst_0
+        patch(end);
+    }
+
+    /**
+     * Leave an int on the stack that is zero if <i>e</i> equals 1.0.
+     */
+    private void isOne (Expression e)
+    {
+        gen(e);
+        emit(0x0f, 2);                                       // dconst_1
+        emit(0x97, -3);                                      // dcmpl
+    }
+
+    private void pushDouble (double d)
+    {
+        if (Double.doubleToRawLongBits(d) == 0L)
+        {
+            emit(0x0e, 2);                                   // dconst_0
+        }
+        else if (d == 1.0)
+        {
+            emit(0x0f, 2);                                   // dconst_1
+        }
+        else
+        {
+            emit(0x14, 2);                                   // ldc2_w
+            emit2(doubleConst(d));
+        }
+    }
+
+    private void pushInt (int i)
+    {
+        if (i <= 5)
+        {
+            emit(0x03 + i, 1);                               // iconst_<i>
+        }
+        else if (i < 128)
+        {
+            emit(0x10, 1);                                   // bipush
+            emit1(i);
+        }
+        else
+        {
+            emit(0x11, 1);                                   // sipush
+            emit2(i);
+        }
+    }
+
+    private void invokeStatic (String owner, String name, String desc, int delta)
+    {
+        emit(0xb8, delta);
+        emit2(methodRef(owner, name, desc));
+    }
+
+    /**
+     * Emit a forward branch and return its position for patch().
+     */
+    private int branch (int op, int delta)
+    {
+        int at = pc;
+        emit(op, delta);
+        emit2(0);
+        return at;
+    }
+
+    /**
+     * Point the branch at <i>at</i> to the current position.
+     */
+    private void patch (int at)
+    {
+        int offset = pc - at;
+        code[at + 1] = (byte) (offset >> 8);
+        code[at + 2] = (byte) offset;
+    }
+
+    private void emit (int op, int delta)
+    {
+        emit1(op);
+        stack += delta;
+        if (stack > maxStack)
+        {
+            maxStack = stack;
+        }
+    }
+
+    private void emit1 (int b)
+    {
+        if (pc == code.length)
+        {
+            if (pc >= MAX_CODE)
+            {
+                throw new IllegalStateException("expression too large");
+            }
+            code = Arrays.copyOf(code, pc * 2);
+        }
+        code[pc++] = (byte) b;
+    }
+
+    private void emit2 (int s)
+    {
+        emit1(s >> 8);
+        emit1(s);
+    }
+
+    /*
+     * Constant pool entries, each one is only added once.
+     */
+
+    private int utf8 (String s)
+    {
+        Integer i = poolIndex.get("U" + s);
+        if (i != null)
+        {
+            return i;
+        }
+        try
+        {
+            pool.writeByte(1);
+            pool.writeUTF(s);
+        }
+        catch (IOException e)
+        {
+            throw new IllegalStateException(e);
+        }
+        poolIndex.put("U" + s, poolCount);
+        return poolCount++;
+    }
+
+    private int classRef (String name)
+    {
+        return entry("C" + name, 7, utf8(name), -1);
+    }
+
+    private int nameAndType (String name, String desc)
+    {
+        return entry("N" + name + ' ' + desc, 12, utf8(name), utf8(desc));
+    }
+
+    private int fieldRef (String owner, String name, String desc)
+    {
+        return entry("F" + owner + '.' + name, 9, classRef(owner), nameAndType(name, desc));
+    }
+
+    private int methodRef (String owner, String name, String desc)
+    {
+        return entry("M" + owner + '.' + name + desc, 10, classRef(owner), nameAndType(name, desc));
+    }
+
+    private int doubleConst (double d)
+    {
+        return wide("D" + Double.doubleToRawLongBits(d), 6, Double.doubleToRawLongBits(d));
+    }
+
+    private int longConst (long l)
+    {
+        return wide("J" + l, 5, l);
+    }
+
+    private int entry (String key, int tag, int a, int b)
+    {
+        Integer i = poolIndex.get(key);
+        if (i != null)
+        {
+            return i;
+        }
+        try
+        {
+            pool.writeByte(tag);
+            pool.writeShort(a);
+            if (b >= 0)
+            {
+                pool.writeShort(b);
+            }
+        }
+        catch (IOException e)
+        {
+            throw new IllegalStateException(e);
+        }
+        poolIndex.put(key, poolCount);
+        return poolCount++;
+    }
+
+    private int wide (String key, int tag, long bits)
+    {
+        Integer i = poolIndex.get(key);
+        if (i != null)
+        {
+            return i;
+        }
+        try
+        {
+            pool.writeByte(tag);
+            pool.writeLong(bits);
+        }
+        catch (IOException e)
+        {
+            throw new IllegalStateException(e);
+        }
+        poolIndex.put(key, poolCount);
+        int index = poolCount;
+        poolCount += 2;     // 8 byte constants take two pool slots
+        return index;
+    }
+
+    /**
+     * Build the class file: a public final subclass of CompiledExpression
+     * with a constructor and the value() method.
+     */
+    private byte[] classFile (String name, Expression root) throws IOException
+    {
+        gen(root);
+        emit(0xaf, -2);                                      // dreturn
+
+        int thisClass = classRef(name);
+        int superClass = classRef(BASE);
+        int codeName = utf8("Code");
+        int initName = utf8("<init>");
+        int initDesc = utf8(INIT_DESC);
+        int superInit = methodRef(BASE, "<init>", INIT_DESC);
+        int valueName = utf8("value");
+        int valueDesc = utf8(VALUE_DESC);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0xCAFEBABE);
+        out.writeShort(0);
+        out.writeShort(49);
+        out.writeShort(poolCount);
+        pool.flush();
+        poolBytes.writeTo(out);
+        out.writeShort(0x0031);     // ACC_PUBLIC | ACC_FINAL | ACC_SUPER
+        out.writeShort(thisClass);
+        out.writeShort(superClass);
+        out.writeShort(0);          // interfaces
+        out.writeShort(0);          // fields
+        out.writeShort(2);          // methods
+
+        // public <init>(Expression[], Variable[]) { super(escapes, vars); }
+        byte[] init = {
+                0x2a, 0x2b, 0x2c,   // aload_0, aload_1, aload_2
+                (byte) 0xb7, (byte) (superInit >> 8), (byte) superInit,
+                (byte) 0xb1         // return
+        };
+        writeMethod(out, initName, initDesc, codeName, 3, 3, init, init.length);
+        writeMethod(out, valueName, valueDesc, codeName, maxStack, 2, code, pc);
+
+        out.writeShort(0);          // class attributes
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static void writeMethod (DataOutputStream out, int name, int desc, int codeName,
+                                     int maxStack, int maxLocals, byte[] code, int length) throws IOException
+    {
+        out.writeShort(0x0001);     // ACC_PUBLIC
+        out.writeShort(name);
+        out.writeShort(desc);
+        out.writeShort(1);
+        out.writeShort(codeName);
+        out.writeInt(12 + length);
+        out.writeShort(maxStack);
+        out.writeShort(maxLocals);
+        out.writeInt(length);
+        out.write(code, 0, length);
+        out.writeShort(0);          // exception table
+        out.writeShort(0);          // code attributes
+    }
+}
@@ -0,0 +1,276 @@
+package basic_1;
+
+import java.util.HashMap;
+
+/**
+ * Simplifies an expression tree right after it was parsed.
+ * <ul>
+ * <li>Sub-trees that only depend on constants and pure functions are
+ * evaluated once and replaced by a ConstantExpression.</li>
+ * <li>Boolean chains with a constant operand are shortened, and a double
+ * NOT of a boolean is dropped.</li>
+ * <li>Sub-trees that occur more than once are replaced by one
+ * SharedExpression, so they are only computed once per evaluation.</li>
+ * </ul>
+ * Functions with side effects or changing results (RND, TIME, INKEY$ ...)
+ * are never folded or shared.
+ */
+final class ExpressionOptimizer
+{
+    private final HashMap<String, Integer> counts = new HashMap<>();
+    private final HashMap<String, SharedExpression> shared = new HashMap<>();
+
+    private ExpressionOptimizer ()
+    {
+    }
+
+    /**
+     * Optimize the top node of a parsed expression. The returned node keeps
+     * the kind of the top node, so a boolean expression stays a
+     * BooleanExpression (PRINT and the syntax checks depend on that).
+     */
+    static Expression optimize (Expression top)
+    {
+        top = simplify(top, true);
+        if (top.getClass() == Expression.class || top.getClass() == BooleanExpression.class)
+        {
+            ExpressionOptimizer o = new ExpressionOptimizer();
+            o.count(top);
+            top.arg1 = o.share(top.arg1);
+            top.arg2 = o.share(top.arg2);
+        }
+        return top;
+    }
+
+    /**
+     * Return true for the operator nodes the optimizer looks into.
+     */
+    private static boolean isOperator (Expression e)
+    {
+        return e != null && (e.getClass() == Expression.class || e.getClass() == BooleanExpression.class);
+    }
+
+    /**
+     * Return true for functions that always give the same result for the
+     * same arguments and don't touch the program.
+     */
+    private static boolean isPure (KeyWords k)
+    {
+        switch (k)
+        {
+            case INT:
+            case SIN:
+            case COS:
+            case TAN:
+            case ATN:
+            case SQR:
+            case MAX:
+            case MIN:
+            case ABS:
+            case LOG:
+            case SGN:
+            case LEN:
+            case VAL:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Return true if <i>e</i> only depends on constants.
+     */
+    private static boolean isConstant (Expression e)
+    {
+        if (e == null || e instanceof ConstantExpression)
+        {
+            return true;
+        }
+        if (isOperator(e))
+        {
+            return isConstant(e.arg1) && isConstant(e.arg2);
+        }
+        if (e instanceof FunctionExpression)
+        {
+            return isPure(e.oper) && isConstant(e.arg1) && isConstant(e.arg2);
+        }
+        return false;
+    }
+
+    /**
+     * Return true if <i>e</i> always evaluates to 1.0 or 0.0.
+     */
+    private static boolean isBoolean (Expression e)
+    {
+        return e instanceof BooleanExpression;
+    }
+
+    /**
+     * Fold constant sub-trees and shorten boolean chains, bottom up.
+     */
+    private static Expression simplify (Expression e, boolean top)
+    {
+        if (e instanceof FunctionExpression && !e.isString() && isConstant(e))
+        {
+            try
+            {
+                return new ConstantExpression(e.value(null));
+            }
+            catch (BASICRuntimeError ex)
+            {
+                return e;
+            }
+        }
+        if (!isOperator(e))
+        {
+            return e;
+        }
+        if (!(top && e instanceof BooleanExpression) && isConstant(e))
+        {
+            try
+            {
+                return new ConstantExpression(e.value(null));
+            }
+            catch (BASICRuntimeError ex)
+            {
+                // leave it, the error shows up when the line runs.
+                return e;
+            }
+        }
+        if (e.arg1 != null)
+        {
+            e.arg1 = simplify(e.arg1, false);
+        }
+        if (e.arg2 != null)
+        {
+            e.arg2 = simplify(e.arg2, false);
+        }
+        switch (e.oper)
+        {
+            case OP_BAND:
+                // 1 AND x is x, 0 AND x is 0 and x is never evaluated.
+                if (e.arg1 instanceof ConstantExpression && !e.arg1.isString())
+                {
+                    if (e.arg1.value(null) == 1.0)
+                    {
+                        return isBoolean(e.arg2) ? e.arg2 : e;
+                    }
+                    return top ? e : new ConstantExpression(0);
+                }
+                break;
+            case OP_BIOR:
+                // 1 OR x is 1 and x is never evaluated, 0 OR x is x.
+                if (e.arg1 instanceof ConstantExpression && !e.arg1.isString())
+                {
+                    if (e.arg1.value(null) == 1.0)
+                    {
+                        return top ? e : new ConstantExpression(1);
+                    }
+                    return isBoolean(e.arg2) ? e.arg2 : e;
+                }
+                break;
+            case OP_BNOT:
+                // NOT NOT x is x for a boolean x.
+                if (e.arg2 != null && e.arg2.getClass() == BooleanExpression.class
+                        && e.arg2.oper == KeyWords.OP_BNOT && isBoolean(e.arg2.arg2))
+                {
+                    return e.arg2.arg2;
+                }
+                break;
+        }
+        return e;
+    }
+
+    /**
+     * Return a key that is equal for structurally equal sub-trees, or null
+     * if <i>e</i> must be evaluated every time it occurs.
+     */
+    private static String key (Expression e)
+    {
+        if (e == null)
+        {
+            return "";
+        }
+        if (e instanceof ConstantExpression)
+        {
+            return e.isString() ? "s" + e.stringValue(null) : "c" + Double.doubleToRawLongBits(e.value(null));
+        }
+        if (e instanceof VariableExpression)
+        {
+            Variable v = ((VariableExpression) e).variable();
+            return (v.isArray() || v.isFunction() || v.isString()) ? null : "v" + v.slot;
+        }
+        if (isOperator(e) || (e instanceof FunctionExpression && isPure(e.oper)))
+        {
+            String a = key(e.arg1);
+            String b = key(e.arg2);
+            if (a == null || b == null)
+            {
+                return null;
+            }
+            return (e instanceof FunctionExpression ? "f" : "o") + e.oper.name() + "(" + a + "," + b + ")";
+        }
+        return null;
+    }
+
+    /**
+     * Count how often every shareable sub-tree occurs.
+     */
+    private void count (Expression e)
+    {
+        if (!isOperator(e))
+        {
+            return;
+        }
+        count(e.arg1);
+        count(e.arg2);
+        countKey(e.arg1);
+        countKey(e.arg2);
+    }
+
+    private void countKey (Expression e)
+    {
+        if (isOperator(e) || e instanceof FunctionExpression)
+        {
+            String k = key(e);
+            if (k != null && !e.isString())
+            {
+                counts.merge(k, 1, Integer::sum);
+            }
+        }
+    }
+
+    /**
+     * Replace every sub-tree that occurs more than once by its shared node.
+     */
+    private Expression share (Expression e)
+    {
+        if (e == null || !(isOperator(e) || e instanceof FunctionExpression) || e.isString())
+        {
+            return e;
+        }
+        String k = key(e);
+        if (k != null && counts.getOrDefault(k, 0) > 1)
+        {
+            SharedExpression s = shared.get(k);
+            if (s == null)
+            {
+                shareChildren(e);
+                s = new SharedExpression(e);
+                shared.put(k, s);
+            }
+            return s;
+        }
+        shareChildren(e);
+        return e;
+    }
+
+    private void shareChildren (Expression e)
+    {
+        if (isOperator(e))
+        {
+            e.arg1 = share(e.arg1);
+            e.arg2 = share(e.arg2);
+        }
+    }
+}
@@ -22,8 +22,6 @@ import misc.Misc;
 
 import java.io.*;
 import java.net.InetAddress;
-import java.net.ServerSocket;
-import java.net.Socket;
 import java.net.UnknownHostException;
 import java.util.Random;
 import java.util.concurrent.CompletableFuture;
@@ -84,79 +82,77 @@ public class FunctionExpression extends Expression {
 
     @Override
     public double value(Program p) throws BASICRuntimeError {
-        try {
-            switch (oper) {
-                case TID:
-                    return Thread.currentThread().getId();
-                case RND:
-                    if (r == null) {
-                        r = p.getRandom();
-                    }
-                    return (r.nextDouble() * arg2.value(p));
-                case INT:
-                    return Math.floor(arg2.value(p));
-                case SIN:
-                    return Math.sin(arg2.value(p));
-                case FN:
-                    return 0.0; //arg2.value (p);
-                case COS:
-                    return Math.cos(arg2.value(p));
-                case TAN:
-                    return Math.tan(arg2.value(p));
-                case ATN:
-                    return Math.atan(arg2.value(p));
-                case SQR:
-                    return Math.sqrt(arg2.value(p));
-                case MAX:
-                    return Math.max(arg1.value(p), arg2.value(p));
-                case MIN:
-                    return Math.min(arg1.value(p), arg2.value(p));
-                case ABS:
-                    return Math.abs(arg2.value(p));
-                case LEN:
-                    String s = arg2.stringValue(p);
-                    return s.length();
-                case LOG:
-                    return Math.log(arg2.value(p));
-                case FRE:
-                    return getRuntime().totalMemory();
-
-                case TIME:
-                    return System.currentTimeMillis() - p.basetime;
-
-                case SPAWN: {
-                    CompletableFuture<Long> future = new CompletableFuture<>();
-                    MainWindow.getInstance().createMDIChild(applications.BasicGUI.class, future);
-                    return future.join();
+        switch (oper) {
+            case TID:
+                return Thread.currentThread().getId();
+            case RND:
+                if (r == null) {
+                    r = p.getRandom();
                 }
+                return (r.nextDouble() * arg2.value(p));
+            case INT:
+                return Math.floor(arg2.value(p));
+            case SIN:
+                return Math.sin(arg2.value(p));
+            case FN:
+                return 0.0; //arg2.value (p);
+            case COS:
+                return Math.cos(arg2.value(p));
+            case TAN:
+                return Math.tan(arg2.value(p));
+            case ATN:
+                return Math.atan(arg2.value(p));
+            case SQR:
+                return Math.sqrt(arg2.value(p));
+            case MAX:
+                return Math.max(arg1.value(p), arg2.value(p));
+            case MIN:
+                return Math.min(arg1.value(p), arg2.value(p));
+            case ABS:
+                return Math.abs(arg2.value(p));
+            case LEN:
+                String s = arg2.stringValue(p);
+                return s.length();
+            case LOG:
+                return Math.log(arg2.value(p));
+            case FRE:
+                return getRuntime().totalMemory();
 
-                case SGN:
-                    double v = arg2.value(p);
-                    if (v < 0) {
-                        return -1.0;
-                    } else if (v > 0) {
-                        return 1.0;
-                    }
-                    return 0.0;
-
-                case VAL:
-                    double dd;
-                    String zz = (arg2.stringValue(p)).trim();
-                    try {
-                        dd = Double.parseDouble(zz);
-                    } catch (NumberFormatException nfe) {
-                        throw new BASICRuntimeError("Invalid string for VAL function.");
-                    }
-                    return dd;
-                default:
-                    throw new BASICRuntimeError("Unknown or non-numeric function.");
-            }
-        } catch (Exception e) {
-            if (e instanceof BASICRuntimeError) {
-                throw (BASICRuntimeError) e;
-            } else {
-                throw new BASICRuntimeError("Arithmetic Exception.");
+            case TIME:
+                return System.currentTimeMillis() - p.basetime;
+
+            case MSGS:
+                return Mailbox.of(Thread.currentThread().getId()).size();
+
+            case WAKER:
+                return Signal.of(Thread.currentThread().getId()).waker();
+
+            case SPAWN: {
+                CompletableFuture<Long> future = new CompletableFuture<>();
+                MainWindow.getInstance().createMDIChild(applications.BasicGUI.class, future);
+                return future.join();
             }
+
+            case SGN:
+                double v = arg2.value(p);
+                if (v < 0) {
+                    return -1.0;
+                } else if (v > 0) {
+                    return 1.0;
+                }
+                return 0.0;
+
+            case VAL:
+                double dd;
+                String zz = (arg2.stringValue(p)).trim();
+                try {
+                    dd = Double.parseDouble(zz);
+                } catch (NumberFormatException nfe) {
+                    throw new BASICRuntimeError("Invalid string for VAL function.");
+                }
+                return dd;
+            default:
+                throw new BASICRuntimeError("Unknown or non-numeric function.");
         }
     }
 
@@ -170,9 +166,11 @@ public class FunctionExpression extends Expression {
             case MID:
             case CLOSE:
             case RECV:
+            case POLL:
             case CHR:
             case STR:
             case LISTEN:
+            case ACCEPT:
             case IP:
             case SPC:
             case TAB:
@@ -192,8 +190,6 @@ public class FunctionExpression extends Expression {
     String stringValue(Program pgm, int column) throws BASICRuntimeError {
         String ss = null;
         int len = 0;
-        StringBuilder sb;
-        int a;
 
         if (sVar != null) {
             ss = sVar.stringValue(pgm);
@@ -201,30 +197,12 @@ public class FunctionExpression extends Expression {
         }
 
         switch (oper) {
-            case CONNECT: {
-                int port = (int) arg2.value(pgm);
-                try {
-                    InetAddress ip = InetAddress.getByName(ss);
-                    Socket sock = new Socket(ip, port);
-                    pgm.sockMap.put(sock.toString(), new Program.ExtendedSocket(sock));
-                    return sock.toString();
-                } catch (IOException e) {
-                    return "failed";
-                }
-            }
-            case LISTEN: {
-                int port = (int) arg2.value(pgm);
-                try {
-                    ServerSocket zsock = new ServerSocket(port);
-                    pgm.sockMap.put("listenSock", new Program.ExtendedSocket(zsock));
-                    Socket sock = zsock.accept();
-                    zsock.close();
-                    pgm.sockMap.put(sock.toString(), new Program.ExtendedSocket(sock));
-                    return sock.toString();
-                } catch (IOException e) {
-                    return "failed";
-                }
-            }
+            case CONNECT:
+                return pgm.sockMap.connect(ss, (int) arg2.value(pgm));
+            case LISTEN:
+                return pgm.sockMap.listen((int) arg2.value(pgm));
+            case ACCEPT:
+                return pgm.sockMap.accept((int) arg2.value(pgm));
             case LEFT:
                 assert ss != null;
                 return ss.substring(0, (int) arg2.value(pgm));
@@ -232,35 +210,12 @@ public class FunctionExpression extends Expression {
                 assert ss != null;
                 return ss.substring(len - (int) arg2.value(pgm));
 
-            case RECV: {
-                Program.ExtendedSocket ext = pgm.sockMap.get(ss);
-                try {
-                    InputStream is = ext.getSocket().getInputStream();
-                    if (ext.textMode) {
-                        BufferedReader br = new BufferedReader(new InputStreamReader(is));
-                        return br.readLine();
-                    }
-                    //InputStream is = ext.sock.getInputStream();
-                    byte[] b = new byte[is.available()];
-                    is.read(b);
-                    return new String(b);
-                } catch (IOException e) {
-                    throw new RuntimeException(e);
-                }
-            }
-
-            case CLOSE: {
-                Closeable sock = pgm.sockMap.get(ss).getSocket();
-                if (sock == null)
-                    return "no socket";
-                try {
-                    sock.close();
-                } catch (IOException e) {
-                    return "close failed";
-                }
-                pgm.sockMap.remove(ss);
-                return ss;
-            }
+            case RECV:
+                return pgm.sockMap.receive(ss);
+            case POLL:
+                return pgm.sockMap.poll(ss);
+            case CLOSE:
+                return pgm.sockMap.close(ss);
 
             case MID:
                 int t = (int) arg1.value(pgm);
@@ -271,12 +226,10 @@ public class FunctionExpression extends Expression {
             case GETNAME:
                 return Thread.currentThread().getName();
             case INKEYS:
-                if (pgm.area.lastKey == 0xffff) {
+                char c = pgm.area.pollKey();
+                if (c == 0xffff) {
                     return "";
                 }
-                //pgm.area.inBuffer.reset();
-                char c = pgm.area.lastKey;
-                pgm.area.lastKey = 0xffff;
                 return "" + c;
 
             case STR:
@@ -291,23 +244,36 @@ public class FunctionExpression extends Expression {
                 }
 
             case SPC:
-                sb = new StringBuilder();
+            case TAB:
+                return buildString(pgm, column);
+
+            default:
+                return "Function not implemented yet.";
+        }
+    }
+
+    /**
+     * SPC and TAB pad the buffer directly, everything else appends its
+     * string value.
+     */
+    @Override
+    void appendTo(Program pgm, StringBuilder sb, int lineStart) throws BASICRuntimeError {
+        int a;
+        switch (oper) {
+            case SPC:
                 a = (int) arg2.value(pgm);
                 for (int i = 0; i < a; i++) {
                     sb.append(' ');
                 }
-                return sb.toString();
-
+                return;
             case TAB:
                 a = (int) arg2.value(pgm);
-                sb = new StringBuilder();
-                for (int i = column; i < a; i++) {
+                for (int i = sb.length() - lineStart; i < a; i++) {
                     sb.append(' ');
                 }
-                return sb.toString();
-
+                return;
             default:
-                return "Function not implemented yet.";
+                super.appendTo(pgm, sb, lineStart);
         }
     }
 
@@ -324,6 +290,8 @@ public class FunctionExpression extends Expression {
 
         if (ty == KeyWords.INKEYS ||
                 ty == KeyWords.TIME ||
+                ty == KeyWords.MSGS ||
+                ty == KeyWords.WAKER ||
                 ty == KeyWords.SPAWN ||
                 ty == KeyWords.GETNAME) {
             return new FunctionExpression(ty, new ConstantExpression(0));
@@ -362,6 +330,7 @@ public class FunctionExpression extends Expression {
             case TAB:
             case LOG:
             case LISTEN:
+            case ACCEPT:
                 a = ParseExpression.expression(lt);
                 if (a instanceof BooleanExpression) {
                     throw new BASICSyntaxError(ty.toString().toUpperCase() + " function cannot accept boolean expression.");
@@ -398,6 +367,7 @@ public class FunctionExpression extends Expression {
                 break;
 
             case RECV:
+            case POLL:
             case CLOSE:
                 a = ParseExpression.expression(lt);
                 if (!a.isString()) {
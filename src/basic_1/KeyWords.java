@@ -72,6 +72,9 @@ public enum KeyWords
     PPRINT ("pprint", "print into plot window"),
     TRANSMIT ("transmit", "send data over tcp"),
     SOCKMODE ("sockmode", "set socket mode"),
+    TXARRAY ("txarray", "send numeric array over tcp"),
+    RXARRAY ("rxarray", "receive numeric array from tcp"),
+    RECEIVE ("receive", "wait for a message sent to this thread"),
     RATE ("rate", "set the speech rate"),   // Must be last statement
 
     CMD_NEW ("new", "erase program in memory"),
@@ -87,6 +90,9 @@ public enum KeyWords
     CMD_CONT ("continue after stop"),
     CMD_INSTRLIST ("instrlist", "lists MIDI instruments"),
     CMD_CMDS ("cmds", "generate sorted list of commands"),
+    CMD_JIT ("jit", "compile hot expressions, JIT 1 = on, JIT 0 = off"),
+    CMD_PROFILE ("profile", "PROFILE ON/OFF profiles the next RUN, PROFILE [n] shows the n slowest lines"),
+    CMD_SCROLLBACK ("scrollback", "SCROLLBACK n keeps n lines on screen, 0 = all, SCROLLBACK shows the limit"),
     CMD_DIR ("dir", "show current directory"),
 
     RND ("rnd", "get a random number"),
@@ -106,6 +112,7 @@ public enum KeyWords
     CONNECT ("connect", "connect to other tcp"),
     CLOSE ("close", "close a tcp connection"),
     RECV ("recv", "receive from tcp connection"),
+    POLL ("poll", "receive from tcp connection without waiting"),
     RIGHT ("right$", "get right part of string"),
     MID ("mid$", "get middle part of string"),
     CHR ("chr$", "make character from integer"),
@@ -119,8 +126,11 @@ public enum KeyWords
     TAB ("tab", "create string of tabs"),
     STR ("str$", "convert number to string"),
     LISTEN ("listen", "Listen for TCP connection"),
+    ACCEPT ("accept", "take a waiting TCP connection of a listen port"),
     IP ("ip$", "get IP address from hostname"),
     INKEYS ("inkey$", "get the last key the user typed"),
+    MSGS ("msgs", "get the number of messages waiting for this thread"),
+    WAKER ("waker", "get the id of the thread that ended the last SLEEP *"),
     TIME ("time", "get free running timer value"),
 
     OP_ADD ("+"),   // Addition '+'
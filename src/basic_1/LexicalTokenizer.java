@@ -19,6 +19,7 @@ package basic_1;
 
 import java.io.Serializable;
 import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.Vector;
 
 //import static misc.Misc.convertFN;
@@ -35,11 +36,93 @@ public class LexicalTokenizer implements Serializable
 
     private final static EnumSet<KeyWords> boolTokens
             = EnumSet.of(KeyWords.OP_BAND, KeyWords.OP_BIOR, KeyWords.OP_BXOR, KeyWords.OP_BNOT);
+
+    /*
+     * Operators, symbols and reserved words always make the same token, so
+     * there is one shared instance of each. Nobody changes a token after
+     * it was made (only numeric constants are negated), so sharing is safe.
+     */
+    private final static Token T_OP_ADD = new Token(KeyWords.OPERATOR, KeyWords.OP_ADD);
+    private final static Token T_OP_SUB = new Token(KeyWords.OPERATOR, KeyWords.OP_SUB);
+    private final static Token T_OP_MUL = new Token(KeyWords.OPERATOR, KeyWords.OP_MUL);
+    private final static Token T_OP_DIV = new Token(KeyWords.OPERATOR, KeyWords.OP_DIV);
+    private final static Token T_OP_EXP = new Token(KeyWords.OPERATOR, KeyWords.OP_EXP);
+    private final static Token T_OP_XOR = new Token(KeyWords.OPERATOR, KeyWords.OP_XOR);
+    private final static Token T_OP_AND = new Token(KeyWords.OPERATOR, KeyWords.OP_AND);
+    private final static Token T_OP_IOR = new Token(KeyWords.OPERATOR, KeyWords.OP_IOR);
+    private final static Token T_OP_NOT = new Token(KeyWords.OPERATOR, KeyWords.OP_NOT);
+    private final static Token T_OP_EQ = new Token(KeyWords.OPERATOR, KeyWords.OP_EQ);
+    private final static Token T_OP_NE = new Token(KeyWords.OPERATOR, KeyWords.OP_NE);
+    private final static Token T_OP_LT = new Token(KeyWords.OPERATOR, KeyWords.OP_LT);
+    private final static Token T_OP_LE = new Token(KeyWords.OPERATOR, KeyWords.OP_LE);
+    private final static Token T_OP_GT = new Token(KeyWords.OPERATOR, KeyWords.OP_GT);
+    private final static Token T_OP_GE = new Token(KeyWords.OPERATOR, KeyWords.OP_GE);
+    // symbol tokens by character, for the ASCII range.
+    private final static Token[] symbols = new Token[128];
+    // functions, keywords and commands by name, in that order of precedence.
+    private final static HashMap<String, Token> words = new HashMap<>();
+
+    static
+    {
+        for (char c = 0; c < symbols.length; c++)
+        {
+            symbols[c] = new Token(KeyWords.SYMBOL, c);
+        }
+        for (KeyWords k : KeyWords.functions)
+        {
+            words.putIfAbsent(k.toString(), new Token(KeyWords.FUNCTION, k));
+        }
+        for (KeyWords k : KeyWords.keywords)
+        {
+            words.putIfAbsent(k.toString(), new Token(KeyWords.KEYWORD, k));
+        }
+        for (KeyWords k : KeyWords.commands)
+        {
+            words.putIfAbsent(k.toString(), new Token(KeyWords.COMMAND, k));
+        }
+        for (KeyWords k : boolTokens)
+        {
+            words.put(k.toString(), new Token(KeyWords.OPERATOR, k));
+        }
+    }
+
     private int currentPos;
     private int previousPos = 0;
+    // the current line, it ends with '\n' at limit - 1. The array is kept
+    // from line to line and only grows.
     private char[] buffer;
+    private int limit;
+    // when scanning for RENUMBER, array references are not parsed, see
+    // scanNext().
+    private boolean scanning;
     // we just keep this around 'cuz we return it a lot.
     private final Token EOLToken = new Token(KeyWords.EOL, 0);
+    // slots of the program the lines are parsed for.
+    private transient SlotTable slots;
+
+    /**
+     * A tokenizer for lines of the program that owns <i>slots</i>.
+     */
+    LexicalTokenizer(SlotTable slots)
+    {
+        this.slots = slots;
+    }
+
+    /**
+     * Parse the following lines for the program that owns <i>slots</i>.
+     */
+    void useSlots(SlotTable slots)
+    {
+        this.slots = slots;
+    }
+
+    /**
+     * Return the slot of variable <i>name</i> in the program being parsed.
+     */
+    int slotOf(String name)
+    {
+        return slots.slotOf(name);
+    }
 
 
     public char[] getBuffer()
@@ -57,12 +140,76 @@ public class LexicalTokenizer implements Serializable
         return sb.toString();
     }
 
+    /**
+     * The position in the line where the next token will be looked for.
+     */
+    int position ()
+    {
+        return currentPos;
+    }
+
+    /**
+     * Continue at <i>current</i>, an unGetToken() goes back to <i>previous</i>.
+     */
+    void moveTo (int previous, int current)
+    {
+        previousPos = previous;
+        currentPos = current;
+    }
+
+    /**
+     * Tell whether the next token is a line number that stands alone, a
+     * number followed by the end of the statement or a ','. Only those are
+     * jump targets RENUMBER maps, see Renumberer. Nothing is consumed.
+     */
+    public boolean atLineNumber ()
+    {
+        int previous = previousPos;
+        int current = currentPos;
+        try
+        {
+            return nextToken().typeNum() == KeyWords.CONSTANT && endsLineNumber(nextToken());
+        }
+        finally
+        {
+            moveTo(previous, current);
+        }
+    }
+
+    /**
+     * Tell whether <i>t</i>, the token after a number, makes the number a
+     * line number that stands alone.
+     */
+    static boolean endsLineNumber (Token t)
+    {
+        return t.typeNum() == KeyWords.EOL || t.isSymbol(':') || t.isSymbol(',');
+    }
+
+    /**
+     * Return the next token without parsing array indices. For a name that
+     * is followed by '(' a plain VARIABLE Token (not a Variable) holding the
+     * name is returned, positioned after the '('; the indices follow as
+     * ordinary tokens. This lexes a line front to back for Renumberer.
+     */
+    Token scanNext ()
+    {
+        scanning = true;
+        try
+        {
+            return nextToken();
+        }
+        finally
+        {
+            scanning = false;
+        }
+    }
+
     /**
      * Returns true if there are more tokens to be returned.
      */
     boolean hasMoreTokens ()
     {
-        return currentPos < buffer.length;
+        return currentPos < limit;
     }
 
     /**
@@ -80,9 +227,26 @@ public class LexicalTokenizer implements Serializable
      */
     public void feedNewLine(String x)
     {
-        x = x.replace(" FN ", " FN"); // remove spc after fn
-        buffer = (x+'\n').toCharArray();
+        int len = x.length();
+        if ((buffer == null) || (buffer.length < len + 1))
+        {
+            buffer = new char[Math.max(len + 1, 128)];
+        }
+        int n = 0;
+        for (int i = 0; i < len; i++)
+        {
+            char c = x.charAt(i);
+            buffer[n++] = c;
+            // remove spc after fn
+            if ((c == ' ') && (n >= 4) && (buffer[n - 4] == ' ') && (buffer[n - 3] == 'F') && (buffer[n - 2] == 'N'))
+            {
+                n--;
+            }
+        }
+        buffer[n++] = '\n';
+        limit = n;
         currentPos = 0;
+        previousPos = 0;
     }
 
     /**
@@ -148,7 +312,7 @@ public class LexicalTokenizer implements Serializable
         /*
          * Always return a token, even if it is just EOL
          */
-        if (currentPos >= buffer.length)
+        if (currentPos >= limit)
         {
             return EOLToken;
         }
@@ -171,62 +335,62 @@ public class LexicalTokenizer implements Serializable
             // Various lexical symbols that have meaning.
             case '+':
                 currentPos++;
-                return new Token(KeyWords.OPERATOR, KeyWords.OP_ADD);
+                return T_OP_ADD;
             case '-':
                 currentPos++;
-                return new Token(KeyWords.OPERATOR, KeyWords.OP_SUB);
+                return T_OP_SUB;
             case '*':
                 if (buffer[currentPos + 1] == '*')
                 {
                     currentPos += 2;
-                    return new Token(KeyWords.OPERATOR, KeyWords.OP_EXP);
+                    return T_OP_EXP;
                 }
                 currentPos++;
-                return new Token(KeyWords.OPERATOR, KeyWords.OP_MUL);
+                return T_OP_MUL;
             case '/':
                 currentPos++;
-                return new Token(KeyWords.OPERATOR, KeyWords.OP_DIV);
+                return T_OP_DIV;
             case '^':
                 currentPos++;
-                return new Token(KeyWords.OPERATOR, KeyWords.OP_XOR);
+                return T_OP_XOR;
             case '&':
                 currentPos++;
-                return new Token(KeyWords.OPERATOR, KeyWords.OP_AND);
+                return T_OP_AND;
             case '|':
                 currentPos++;
-                return new Token(KeyWords.OPERATOR, KeyWords.OP_IOR);
+                return T_OP_IOR;
             case '!':
                 currentPos++;
-                return new Token(KeyWords.OPERATOR, KeyWords.OP_NOT);
+                return T_OP_NOT;
             case '=':
                 currentPos++;
-                return new Token(KeyWords.OPERATOR, KeyWords.OP_EQ);
+                return T_OP_EQ;
             case '<':
                 if (buffer[currentPos + 1] == '=')
                 {
                     currentPos += 2;
-                    return new Token(KeyWords.OPERATOR, KeyWords.OP_LE);
+                    return T_OP_LE;
                 }
                 else if (buffer[currentPos + 1] == '>')
                 {
                     currentPos += 2;
-                    return new Token(KeyWords.OPERATOR, KeyWords.OP_NE);
+                    return T_OP_NE;
                 }
                 currentPos++;
-                return new Token(KeyWords.OPERATOR, KeyWords.OP_LT);
+                return T_OP_LT;
             case '>':
                 if (buffer[currentPos + 1] == '=')
                 {
                     currentPos += 2;
-                    return new Token(KeyWords.OPERATOR, KeyWords.OP_GE);
+                    return T_OP_GE;
                 }
                 else if (buffer[currentPos + 1] == '<')
                 {
                     currentPos += 2;
-                    return new Token(KeyWords.OPERATOR, KeyWords.OP_NE);
+                    return T_OP_NE;
                 }
                 currentPos++;
-                return new Token(KeyWords.OPERATOR, KeyWords.OP_GT);
+                return T_OP_GT;
             case '(':
             case '\'':
             case '?':
@@ -234,7 +398,7 @@ public class LexicalTokenizer implements Serializable
             case ':':
             case ';':
             case ',':
-                return new Token(KeyWords.SYMBOL, buffer[currentPos++]);
+                return symbol(buffer[currentPos++]);
             /* Else we fall through to the next CASE (numeric constant) */
             case '0':
             case '1':
@@ -251,14 +415,11 @@ public class LexicalTokenizer implements Serializable
                 {
                     return r;
                 }
-                return new Token(KeyWords.SYMBOL, buffer[currentPos++]);
+                return symbol(buffer[currentPos++]);
             // process EOL characters. (dump <CR><LF> as just EOL)
             case '\r':
             case '\n':
-                while (currentPos < buffer.length)
-                {
-                    currentPos++;
-                }
+                currentPos = limit;
                 return EOLToken;
             // text enclosed in "quotes" is a string constant.
             case '"':
@@ -286,7 +447,7 @@ public class LexicalTokenizer implements Serializable
                             sb.append(buffer[currentPos]);
                     }
                     currentPos++;
-                    if (currentPos >= buffer.length)
+                    if (currentPos >= limit)
                     {
                         return new Token(KeyWords.ERROR, "Missing end quote.");
                     }
@@ -315,31 +476,12 @@ public class LexicalTokenizer implements Serializable
             q.append(buffer[currentPos++]);
         }
         String t = q.toString();
-        //
-        for (KeyWords k : KeyWords.functions)
-        {
-            if (t.compareTo(k.toString()) == 0)
-            {
-                return new Token(KeyWords.FUNCTION, k);
-            }
-        }
 
-        /* Is it a BASIC keyword ? */
-        for (KeyWords k : KeyWords.keywords)
-        {
-            if (t.compareTo(k.toString()) == 0)
-            {
-                return new Token(KeyWords.KEYWORD, k);
-            }
-        }
-
-        /* Is it a command ? */
-        for (KeyWords k : KeyWords.commands)
+        /* Is it a function, BASIC keyword or command ? */
+        Token w = words.get(t);
+        if ((w != null) && (w.typeNum() != KeyWords.OPERATOR))
         {
-            if (t.compareTo(k.toString()) == 0)
-            {
-                return new Token(KeyWords.COMMAND, k);
-            }
+            return w;
         }
         /*
          * It must be a variable.
@@ -351,41 +493,55 @@ public class LexicalTokenizer implements Serializable
         if (buffer[currentPos] == '(')
         {
             currentPos++;
-            Vector<Expression> expVec = new Vector<>();
-            Expression[] expn;
+            if (scanning)
+            {
+                return new Token(KeyWords.VARIABLE, t);
+            }
+            return arrayReference(t, savePos);
+        }
+        return new Variable(t, slotOf(t));
+    }
+
+    /**
+     * Parse the indices of array reference <i>name</i>, the position is just
+     * after the '('. <i>savePos</i> is where the name started.
+     */
+    private Token arrayReference (String name, int savePos)
+    {
+        Vector<Expression> expVec = new Vector<>();
+        Expression[] expn;
 
-            // This line sets the maximum number of indices.
-            for (int i = 0; i < 4; i++)
+        // This line sets the maximum number of indices.
+        for (int i = 0; i < 4; i++)
+        {
+            Expression thisE;
+            try
             {
-                Expression thisE;
-                try
-                {
-                    thisE = ParseExpression.expression(this);
-                }
-                catch (BASICSyntaxError bse)
-                {
-                    return new Token(KeyWords.ERROR, "Error parsing array index.");
-                }
-                expVec.addElement(thisE);
-                if (buffer[currentPos] == ')')
-                {
-                    currentPos++; // skip past the paren
-                    expn = new Expression[expVec.size()]; // this recurses to us
-                    for (int k = 0; k < expVec.size(); k++)
-                    {
-                        expn[k] = expVec.elementAt(k);
-                    }
-                    previousPos = savePos; // this is so we can "unget"
-                    return new Variable(t, expn);
-                }
-                if (buffer[currentPos] != ',')
+                thisE = ParseExpression.expression(this);
+            }
+            catch (BASICSyntaxError bse)
+            {
+                return new Token(KeyWords.ERROR, "Error parsing array index.");
+            }
+            expVec.addElement(thisE);
+            if (buffer[currentPos] == ')')
+            {
+                currentPos++; // skip past the paren
+                expn = new Expression[expVec.size()]; // this recurses to us
+                for (int k = 0; k < expVec.size(); k++)
                 {
-                    return new Token(KeyWords.ERROR, "Missing comma in array index.");
+                    expn[k] = expVec.elementAt(k);
                 }
-                currentPos++;
+                previousPos = savePos; // this is so we can "unget"
+                return new Variable(name, slotOf(name), expn);
+            }
+            if (buffer[currentPos] != ',')
+            {
+                return new Token(KeyWords.ERROR, "Missing comma in array index.");
             }
+            currentPos++;
         }
-        return new Variable(t);
+        return new Variable(name, slotOf(name));
     }
 
     /**
@@ -496,33 +652,36 @@ public class LexicalTokenizer implements Serializable
      */
     private Token parseBooleanOp ()
     {
-        int oldPos = currentPos;
-        StringBuilder sb = new StringBuilder();
-        int len = 0;
-        Token r = null;
-
-        do
+        int len = 1;
+        while (isLetter(buffer[currentPos + len]))
         {
-            sb.append(buffer[currentPos + len]);
             len++;
         }
-        while (isLetter(buffer[currentPos + len]));
-        String x = sb.toString();
-        for (KeyWords k : boolTokens)
+        // AND, OR, XOR and NOT, in any case.
+        if ((len < 2) || (len > 3))
         {
-            if (x.equalsIgnoreCase(k.toString()))
-            {
-                r = new Token(KeyWords.OPERATOR, k);
-                break;
-            }
+            return null;
         }
-        if (r != null)
+        char[] up = new char[len];
+        for (int i = 0; i < len; i++)
         {
-            currentPos += len;
-            return r;
+            up[i] = Character.toUpperCase(buffer[currentPos + i]);
         }
-        currentPos = oldPos;
-        return null;
+        Token r = words.get(new String(up));
+        if ((r == null) || (r.typeNum() != KeyWords.OPERATOR))
+        {
+            return null;
+        }
+        currentPos += len;
+        return r;
+    }
+
+    /**
+     * Return the shared token for symbol <i>c</i>.
+     */
+    private static Token symbol (char c)
+    {
+        return (c < symbols.length) ? symbols[c] : new Token(KeyWords.SYMBOL, c);
     }
 
     /**
@@ -0,0 +1,170 @@
+package basic_1;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The message queue of one BASIC thread. SEND puts whole messages into the
+ * mailbox of another thread, a String or, for a single numeric expression,
+ * a Double; RECEIVE takes them out in order and MSGS tells how many wait.
+ * <p>
+ * Any thread may send, only the owner receives. Senders claim a slot of
+ * the ring by a compare-and-set on the tail and store the message into it,
+ * the owner takes the slot at the head once it is filled. Neither side
+ * takes a lock. An owner that finds the mailbox empty parks until a sender
+ * wakes it up; a sender that finds it full waits for room, so a slow
+ * receiver slows its senders down.
+ */
+public final class Mailbox
+{
+    private static final int CAPACITY = 1024;   // a power of two
+    private static final int MASK = CAPACITY - 1;
+    // how long a sender waits before it looks for room again.
+    private static final long FULL_WAIT_NANOS = 50_000;
+
+    private static final ConcurrentHashMap<Long, Mailbox> boxes = new ConcurrentHashMap<>();
+
+    private final AtomicReferenceArray<Object> slots = new AtomicReferenceArray<>(CAPACITY);
+    // next slot to claim, advanced by the senders.
+    private final AtomicLong tail = new AtomicLong();
+    // next slot to take, only the owner writes it.
+    private volatile long head;
+    // the owner while it is parked in take().
+    private volatile Thread waiter;
+
+    private Mailbox ()
+    {
+    }
+
+    /**
+     * The mailbox of thread <i>threadId</i>, made on first use. This is how
+     * a program gets its own mailbox.
+     */
+    public static Mailbox of (long threadId)
+    {
+        return boxes.computeIfAbsent(threadId, k -> new Mailbox());
+    }
+
+    /**
+     * The mailbox to send to for thread <i>threadId</i>, or null if there
+     * is no BASIC thread with that id.
+     */
+    public static Mailbox find (long threadId)
+    {
+        Mailbox m = boxes.get(threadId);
+        if (m == null && Program.streamMap.containsKey(threadId))
+        {
+            m = of(threadId);
+        }
+        return m;
+    }
+
+    /**
+     * Drop the mailbox of a thread that has ended.
+     */
+    public static void remove (long threadId)
+    {
+        boxes.remove(threadId);
+    }
+
+    /**
+     * Number of messages waiting.
+     */
+    public int size ()
+    {
+        return (int) (tail.get() - head);
+    }
+
+    /**
+     * Put <i>msg</i> into the mailbox if there is room. Returns false if
+     * it is full.
+     */
+    public boolean offer (Object msg)
+    {
+        long t;
+        do
+        {
+            t = tail.get();
+            if (t - head >= CAPACITY)
+            {
+                return false;
+            }
+        }
+        while (!tail.compareAndSet(t, t + 1));
+        slots.set((int) t & MASK, msg);
+        Thread w = waiter;
+        if (w != null)
+        {
+            LockSupport.unpark(w);
+        }
+        return true;
+    }
+
+    /**
+     * Put <i>msg</i> into the mailbox, wait for room while it is full.
+     */
+    public void put (Object msg) throws BASICRuntimeError
+    {
+        while (!offer(msg))
+        {
+            LockSupport.parkNanos(this, FULL_WAIT_NANOS);
+            if (Thread.interrupted())
+            {
+                throw new BASICRuntimeError("Interrupted while the mailbox was full.");
+            }
+        }
+    }
+
+    /**
+     * Take the next message, or return null if there is none. Only the
+     * owner may call this.
+     */
+    public Object poll ()
+    {
+        long h = head;
+        int i = (int) h & MASK;
+        Object msg = slots.get(i);
+        if (msg == null)
+        {
+            // empty, or the sender that claimed the slot hasn't stored yet.
+            return null;
+        }
+        slots.lazySet(i, null);
+        head = h + 1;
+        return msg;
+    }
+
+    /**
+     * Take the next message, wait until there is one. Only the owner may
+     * call this.
+     */
+    public Object take () throws BASICRuntimeError
+    {
+        Object msg = poll();
+        if (msg != null)
+        {
+            return msg;
+        }
+        // a sender stores its message before it looks at waiter, and we
+        // set waiter before we look again, so one of us sees the other.
+        waiter = Thread.currentThread();
+        try
+        {
+            while ((msg = poll()) == null)
+            {
+                LockSupport.park(this);
+                if (Thread.interrupted())
+                {
+                    throw new BASICRuntimeError("Interrupted while waiting for a message.");
+                }
+            }
+            return msg;
+        }
+        finally
+        {
+            waiter = null;
+        }
+    }
+}
@@ -0,0 +1,662 @@
+package basic_1;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * The TCP connections of a program. Everything is non-blocking NIO on one
+ * selector, so a program can keep many connections and listen ports open
+ * without a thread for each. A connection is known to the program by a
+ * handle string, which CONNECT, LISTEN and ACCEPT return.
+ * <p>
+ * Each connection keeps its read and write buffer, so data that came in
+ * together with a line stays for the next RECV. In text mode RECV returns
+ * the next line and waits for it, POLL returns it only if it is complete.
+ * In binary mode both return what has arrived, up to one buffer full,
+ * which may be nothing. TRANSMIT returns once everything is written.
+ * <p>
+ * Text mode uses the platform charset, binary mode ISO-8859-1, so there
+ * every byte is one character from 0 to 255 and back. Numeric arrays go
+ * over the wire without strings: TXARRAY sends elements as big-endian
+ * doubles, or 32 bit ints for an integer array, and RXARRAY reads them
+ * into an array the same way. The buffers are direct and come from a
+ * pool that is shared by all programs; a closed connection gives them
+ * back.
+ * <p>
+ * A listen port stays open after LISTEN, so it can take any number of
+ * clients: LISTEN waits for the next one, ACCEPT takes one only if it is
+ * there. Waiting ends early if the program's thread is interrupted.
+ */
+public final class Network
+{
+    private static final int BUFFER_SIZE = 8192;
+    private static final Charset TEXT = Charset.defaultCharset();
+    private static final Charset BINARY = StandardCharsets.ISO_8859_1;
+    private static final byte[] LINE_END = System.lineSeparator().getBytes(TEXT);
+    // buffers kept for new connections, at most POOL_SIZE.
+    private static final int POOL_SIZE = 64;
+    private static final ConcurrentLinkedQueue<ByteBuffer> pool = new ConcurrentLinkedQueue<>();
+
+    private final ConcurrentHashMap<String, Connection> connections = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Integer, ServerSocketChannel> servers = new ConcurrentHashMap<>();
+    // opened on first use, closed by closeAll().
+    private volatile Selector selector;
+
+    /**
+     * One open connection and its buffers. <i>in</i> is kept ready for
+     * reading (flipped), <i>out</i> ready for writing.
+     */
+    private static final class Connection
+    {
+        final SocketChannel channel;
+        final SelectionKey key;
+        ByteBuffer in = allocate(BUFFER_SIZE);
+        ByteBuffer out = allocate(BUFFER_SIZE);
+        boolean textMode;
+        Charset charset = BINARY;
+        CharsetEncoder encoder = encoder(BINARY);
+        boolean eof;
+
+        Connection (SocketChannel channel, SelectionKey key)
+        {
+            this.channel = channel;
+            this.key = key;
+            in.flip();
+        }
+
+        /**
+         * Close the channel and give the buffers back. Only on the thread
+         * of the program, closeAll() leaves the buffers alone.
+         */
+        void close () throws IOException
+        {
+            try
+            {
+                channel.close();
+            }
+            finally
+            {
+                release(in);
+                release(out);
+                in = out = null;
+            }
+        }
+    }
+
+    private static ByteBuffer allocate (int size)
+    {
+        if (size == BUFFER_SIZE)
+        {
+            ByteBuffer b = pool.poll();
+            if (b != null)
+            {
+                b.clear();
+                return b;
+            }
+        }
+        return ByteBuffer.allocateDirect(size);
+    }
+
+    private static void release (ByteBuffer b)
+    {
+        if (b != null && b.capacity() == BUFFER_SIZE && pool.size() < POOL_SIZE)
+        {
+            pool.offer(b);
+        }
+    }
+
+    private static CharsetEncoder encoder (Charset cs)
+    {
+        return cs.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    private Selector selector () throws IOException
+    {
+        Selector sel = selector;
+        if (sel == null || !sel.isOpen())
+        {
+            sel = selector = Selector.open();
+        }
+        return sel;
+    }
+
+    private String add (SocketChannel ch) throws IOException
+    {
+        ch.configureBlocking(false);
+        SelectionKey key = ch.register(selector(), 0);
+        String handle = ch.socket().toString();
+        connections.put(handle, new Connection(ch, key));
+        return handle;
+    }
+
+    private Connection get (String handle) throws BASICRuntimeError
+    {
+        Connection c = connections.get(handle);
+        if (c == null)
+        {
+            throw new BASICRuntimeError("No such socket: " + handle);
+        }
+        return c;
+    }
+
+    /**
+     * Wait until <i>key</i> is ready for <i>ops</i>.
+     */
+    private void await (SelectionKey key, int ops) throws IOException
+    {
+        Selector sel = key.selector();
+        try
+        {
+            key.interestOps(ops);
+            while (true)
+            {
+                sel.select();
+                boolean ready = sel.selectedKeys().remove(key);
+                if (Thread.interrupted())
+                {
+                    throw new BASICRuntimeError("Interrupted while waiting on a socket.");
+                }
+                if (ready || !key.isValid())
+                {
+                    return;
+                }
+            }
+        }
+        catch (CancelledKeyException | ClosedSelectorException e)
+        {
+            // closed by closeAll(), the next read or write reports it.
+            return;
+        }
+        finally
+        {
+            try
+            {
+                key.interestOps(0);
+            }
+            catch (CancelledKeyException e)
+            {
+                // closed meanwhile.
+            }
+        }
+    }
+
+    /**
+     * Open a connection to <i>host</i>:<i>port</i>, return its handle or
+     * "failed".
+     */
+    public String connect (String host, int port)
+    {
+        try
+        {
+            return add(SocketChannel.open(new InetSocketAddress(InetAddress.getByName(host), port)));
+        }
+        catch (IOException e)
+        {
+            return "failed";
+        }
+    }
+
+    private ServerSocketChannel server (int port) throws IOException
+    {
+        ServerSocketChannel server = servers.get(port);
+        if (server == null)
+        {
+            server = ServerSocketChannel.open();
+            server.bind(new InetSocketAddress(port));
+            server.configureBlocking(false);
+            server.register(selector(), 0);
+            servers.put(port, server);
+        }
+        return server;
+    }
+
+    /**
+     * Wait for the next client on <i>port</i>, return its handle or
+     * "failed". The port is opened the first time and stays open.
+     */
+    public String listen (int port)
+    {
+        try
+        {
+            ServerSocketChannel server = server(port);
+            SocketChannel ch;
+            while ((ch = server.accept()) == null)
+            {
+                await(server.keyFor(selector()), SelectionKey.OP_ACCEPT);
+            }
+            return add(ch);
+        }
+        catch (IOException e)
+        {
+            return "failed";
+        }
+    }
+
+    /**
+     * The handle of the next client on <i>port</i> if one is waiting, else
+     * "". Opens the port if needed.
+     */
+    public String accept (int port)
+    {
+        try
+        {
+            SocketChannel ch = server(port).accept();
+            return (ch == null) ? "" : add(ch);
+        }
+        catch (IOException e)
+        {
+            return "failed";
+        }
+    }
+
+    public void setTextMode (String handle, boolean text) throws BASICRuntimeError
+    {
+        Connection c = get(handle);
+        c.textMode = text;
+        c.charset = text ? TEXT : BINARY;
+        c.encoder = encoder(c.charset);
+    }
+
+    /**
+     * Read what the channel has without waiting, as much as fits. Returns
+     * false at the end of the stream. The buffer only grows in text mode,
+     * for a line that is longer than the buffer; whatever doesn't fit
+     * stays in the socket for the next call.
+     */
+    private static boolean fill (Connection c) throws IOException
+    {
+        if (c.eof)
+        {
+            return false;
+        }
+        c.in.compact();
+        try
+        {
+            while (true)
+            {
+                if (!c.in.hasRemaining())
+                {
+                    if (!c.textMode || hasLineEnd(c.in))
+                    {
+                        return true;
+                    }
+                    // a line longer than the buffer.
+                    ByteBuffer bigger = allocate(c.in.capacity() * 2);
+                    c.in.flip();
+                    bigger.put(c.in);
+                    release(c.in);
+                    c.in = bigger;
+                }
+                int n = c.channel.read(c.in);
+                if (n < 0)
+                {
+                    c.eof = true;
+                    return false;
+                }
+                if (n == 0)
+                {
+                    return true;
+                }
+            }
+        }
+        finally
+        {
+            c.in.flip();
+        }
+    }
+
+    /**
+     * Whether the bytes in <i>b</i>, which is being filled, hold a line end.
+     */
+    private static boolean hasLineEnd (ByteBuffer b)
+    {
+        for (int i = 0; i < b.position(); i++)
+        {
+            if (b.get(i) == '\n')
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Take one line out of the read buffer, or return null if there is no
+     * complete line (at the end of the stream, the rest is a line).
+     */
+    private static String line (Connection c)
+    {
+        ByteBuffer in = c.in;
+        int start = in.position();
+        for (int i = start; i < in.limit(); i++)
+        {
+            if (in.get(i) == '\n')
+            {
+                int end = (i > start && in.get(i - 1) == '\r') ? i - 1 : i;
+                String s = decode(c, start, end);
+                in.position(i + 1);
+                return s;
+            }
+        }
+        if (c.eof && in.hasRemaining())
+        {
+            return rest(c);
+        }
+        return null;
+    }
+
+    private static String rest (Connection c)
+    {
+        ByteBuffer in = c.in;
+        String s = decode(c, in.position(), in.limit());
+        in.position(in.limit());
+        return s;
+    }
+
+    private static String decode (Connection c, int from, int to)
+    {
+        ByteBuffer in = c.in;
+        if (c.charset == BINARY)
+        {
+            char[] chars = new char[to - from];
+            for (int i = 0; i < chars.length; i++)
+            {
+                chars[i] = (char) (in.get(from + i) & 0xff);
+            }
+            return new String(chars);
+        }
+        ByteBuffer b = in.duplicate();
+        b.limit(to).position(from);
+        return c.charset.decode(b).toString();
+    }
+
+    /**
+     * RECV: in text mode the next line, waiting for it ("" once the other
+     * side has closed), in binary mode what has arrived, up to a buffer full.
+     */
+    public String receive (String handle) throws BASICRuntimeError
+    {
+        return receive(handle, true);
+    }
+
+    /**
+     * POLL: like RECV, but never waits; "" if no complete line is there.
+     */
+    public String poll (String handle) throws BASICRuntimeError
+    {
+        return receive(handle, false);
+    }
+
+    private String receive (String handle, boolean wait) throws BASICRuntimeError
+    {
+        Connection c = get(handle);
+        try
+        {
+            fill(c);
+            if (!c.textMode)
+            {
+                return rest(c);
+            }
+            String s;
+            while ((s = line(c)) == null)
+            {
+                if (!wait || c.eof)
+                {
+                    return "";
+                }
+                await(c.key, SelectionKey.OP_READ);
+                fill(c);
+            }
+            return s;
+        }
+        catch (IOException e)
+        {
+            throw failed("read", e);
+        }
+    }
+
+    /**
+     * TRANSMIT: send <i>text</i>, with a line end in text mode.
+     */
+    public void transmit (String handle, String text) throws BASICRuntimeError
+    {
+        Connection c = get(handle);
+        CharsetEncoder enc = c.encoder;
+        enc.reset();
+        CharBuffer chars = CharBuffer.wrap(text);
+        try
+        {
+            while (enc.encode(chars, c.out, true).isOverflow())
+            {
+                flush(c);
+            }
+            while (enc.flush(c.out).isOverflow())
+            {
+                flush(c);
+            }
+            if (c.textMode)
+            {
+                if (c.out.remaining() < LINE_END.length)
+                {
+                    flush(c);
+                }
+                c.out.put(LINE_END);
+            }
+            flush(c);
+        }
+        catch (IOException e)
+        {
+            throw failed("write", e);
+        }
+    }
+
+    /**
+     * TXARRAY: send the first <i>count</i> elements of the numeric array
+     * <i>array</i>.
+     */
+    public void transmit (String handle, Variable array, int count) throws BASICRuntimeError
+    {
+        Connection c = get(handle);
+        double[] numbers = array.numbers();
+        int[] integers = array.integers();
+        checkCount(numbers, integers, count);
+        ByteBuffer out = c.out;
+        try
+        {
+            for (int i = 0; i < count; i++)
+            {
+                if (out.remaining() < 8)
+                {
+                    flush(c);
+                }
+                if (integers != null)
+                {
+                    out.putInt(integers[i]);
+                }
+                else
+                {
+                    out.putDouble(numbers[i]);
+                }
+            }
+            flush(c);
+        }
+        catch (IOException e)
+        {
+            throw failed("write", e);
+        }
+    }
+
+    /**
+     * RXARRAY: read <i>count</i> elements into the numeric array
+     * <i>array</i>, waiting until all of them are there.
+     */
+    public void receive (String handle, Variable array, int count) throws BASICRuntimeError
+    {
+        Connection c = get(handle);
+        double[] numbers = array.numbers();
+        int[] integers = array.integers();
+        checkCount(numbers, integers, count);
+        int size = (integers != null) ? 4 : 8;
+        try
+        {
+            fill(c);
+            int i = 0;
+            while (true)
+            {
+                ByteBuffer in = c.in;
+                for (; i < count && in.remaining() >= size; i++)
+                {
+                    if (integers != null)
+                    {
+                        integers[i] = in.getInt();
+                    }
+                    else
+                    {
+                        numbers[i] = in.getDouble();
+                    }
+                }
+                if (i == count)
+                {
+                    return;
+                }
+                if (c.eof)
+                {
+                    throw new BASICRuntimeError("Connection closed after " + i + " of " + count + " elements.");
+                }
+                await(c.key, SelectionKey.OP_READ);
+                fill(c);
+            }
+        }
+        catch (IOException e)
+        {
+            throw failed("read", e);
+        }
+    }
+
+    private static void checkCount (double[] numbers, int[] integers, int count) throws BASICRuntimeError
+    {
+        if (numbers == null && integers == null)
+        {
+            throw new BASICRuntimeError("numeric array required");
+        }
+        if (count < 0 || count > ((integers != null) ? integers.length : numbers.length))
+        {
+            throw new BASICRuntimeError("Index out of range.");
+        }
+    }
+
+    /**
+     * Write out what is in the write buffer, wait while the peer is slow.
+     */
+    private void flush (Connection c) throws IOException
+    {
+        ByteBuffer out = c.out;
+        out.flip();
+        try
+        {
+            while (out.hasRemaining())
+            {
+                if (c.channel.write(out) == 0)
+                {
+                    await(c.key, SelectionKey.OP_WRITE);
+                }
+            }
+        }
+        finally
+        {
+            out.clear();
+        }
+    }
+
+    private static BASICRuntimeError failed (String what, IOException e)
+    {
+        if (e instanceof ClosedChannelException)
+        {
+            return new BASICRuntimeError("socket " + what + " failed: socket is closed");
+        }
+        return new BASICRuntimeError("socket " + what + " failed: " + e.getMessage());
+    }
+
+    /**
+     * CLOSE: close a connection, return its handle, or "no socket".
+     */
+    public String close (String handle)
+    {
+        Connection c = connections.remove(handle);
+        if (c == null)
+        {
+            return "no socket";
+        }
+        try
+        {
+            c.close();
+        }
+        catch (IOException e)
+        {
+            return "close failed";
+        }
+        return handle;
+    }
+
+    /**
+     * Close all connections and listen ports. May be called from another
+     * thread to end a program that waits on a socket, so the buffers are
+     * not given back to the pool here.
+     */
+    public void closeAll () throws IOException
+    {
+        IOException failed = null;
+        for (Iterator<Connection> it = connections.values().iterator(); it.hasNext(); )
+        {
+            try
+            {
+                it.next().channel.close();
+            }
+            catch (IOException e)
+            {
+                failed = e;
+            }
+            it.remove();
+        }
+        for (Iterator<ServerSocketChannel> it = servers.values().iterator(); it.hasNext(); )
+        {
+            try
+            {
+                it.next().close();
+            }
+            catch (IOException e)
+            {
+                failed = e;
+            }
+            it.remove();
+        }
+        // this also ends a select() the program thread is waiting in.
+        Selector sel = selector;
+        selector = null;
+        if (sel != null)
+        {
+            try
+            {
+                sel.close();
+            }
+            catch (IOException e)
+            {
+                failed = e;
+            }
+        }
+        if (failed != null)
+        {
+            throw failed;
+        }
+    }
+}
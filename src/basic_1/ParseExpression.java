@@ -51,7 +51,7 @@ public class ParseExpression extends Expression {
         Token t = lt.nextToken();
 
         if (t.isSymbol('(')) {
-            result = expression(lt);
+            result = disjunction(lt);
             t = lt.nextToken();
             if (!t.isSymbol(')')) {
                 lt.unGetToken();
@@ -232,7 +232,17 @@ public class ParseExpression extends Expression {
         return result;
     }
 
+    /**
+     * Parse a complete expression. The tree is run through the
+     * ExpressionOptimizer and its top node is marked as the root.
+     */
     public static Expression expression(LexicalTokenizer lt) throws BASICSyntaxError {
+        Expression result = ExpressionOptimizer.optimize(disjunction(lt));
+        result.root = true;
+        return result;
+    }
+
+    private static Expression disjunction(LexicalTokenizer lt) throws BASICSyntaxError {
         Expression result;
         Token t;
 
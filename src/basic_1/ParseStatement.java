@@ -286,6 +286,11 @@ public class ParseStatement extends Statement
                     t = lt.nextToken();
                     return nextStep (lt, t,s);
 
+                case RECEIVE:
+                    s = new RECEIVEStatement(lt);
+                    t = lt.nextToken();
+                    return nextStep (lt, t,s);
+
                 case SOCKMODE:
                     s = new SockModeStatement (lt);
                     t = lt.nextToken();
@@ -296,6 +301,16 @@ public class ParseStatement extends Statement
                     t = lt.nextToken();
                     return nextStep (lt, t,s);
 
+                case TXARRAY:
+                    s = new TransmitArrayStatement(lt);
+                    t = lt.nextToken();
+                    return nextStep (lt, t,s);
+
+                case RXARRAY:
+                    s = new ReceiveArrayStatement(lt);
+                    t = lt.nextToken();
+                    return nextStep (lt, t,s);
+
                 case PPRINT:
                     s = new PPRINTStatement(lt);
                     t = lt.nextToken();
@@ -34,6 +34,16 @@ public class PrintItem {
         thing = o;
     }
 
+    /**
+     * The expression of this item if it is a plain numeric one, else null.
+     */
+    public Expression numericExpression() {
+        if (type == EXPRESSION && !(thing instanceof BooleanExpression) && !((Expression) thing).isString()) {
+            return (Expression) thing;
+        }
+        return null;
+    }
+
     private static final String S_TAB = "\t";
     private static final String S_SEMI = "";
 
@@ -67,6 +77,44 @@ public class PrintItem {
         }
     }
 
+    /**
+     * Append the value of this item to <i>sb</i>, the print line started
+     * at <i>lineStart</i>.
+     */
+    void appendTo(Program pgm, StringBuilder sb, int lineStart) throws BASICRuntimeError {
+        switch (type) {
+            case EXPRESSION:
+                Expression e = (Expression) thing;
+                if (thing instanceof BooleanExpression) {
+                    double zz = ((Expression) thing).value(pgm);
+                    sb.append((zz == 1) ? '0' : '1');
+                } else if (e.isString()) {
+                    e.appendTo(pgm, sb, lineStart);
+                } else {
+                    sb.append(Misc.df.format(e.value(pgm)));
+                }
+                return;
+
+            case STRING_VARIABLE:
+                sb.append(pgm.getString((Variable) thing));
+                return;
+
+            case STRING_CONSTANT:
+                sb.append((String) thing);
+                return;
+
+            case TAB:
+                sb.append(S_TAB);
+                return;
+
+            case SEMI:
+                return;
+
+            default:
+                sb.append("BOGUS PRINTITEM");
+        }
+    }
+
     public boolean needCR() {
         return ((type != TAB) && (type != SEMI));
     }
@@ -0,0 +1,139 @@
+package basic_1;
+
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Counts how often each line of a program runs and how long it takes.
+ * Program.run() makes one if profiling is switched on for that program
+ * (PROFILE ON in its window, -profile of BatchRunner, or
+ * -Dbasic.profile=true), and the PROFILE command shows the last run.
+ * <p>
+ * The counters are plain arrays indexed like the linked statement table,
+ * every statement knows the index of its line from link(). The time of a
+ * statement is its own: a GOTO or GOSUB is done once it has found its
+ * target, the lines that follow are counted for themselves. Besides the
+ * per line sums there is a histogram of single statement times in powers
+ * of two nanoseconds.
+ */
+final class Profiler
+{
+    private static final int BUCKETS = 40;
+
+    private final int[] lines;
+    private final long[] counts;
+    private final long[] nanos;
+    private final long[] histogram = new long[BUCKETS];
+
+    /**
+     * @param lines the line numbers of the linked program
+     */
+    Profiler (int[] lines)
+    {
+        this.lines = lines;
+        counts = new long[lines.length];
+        nanos = new long[lines.length];
+    }
+
+    /**
+     * Execute <i>s</i> and account for it. Errors go to the run loop as
+     * they are.
+     */
+    Statement execute (Statement s, Program pgm, InputStream in, PrintStream out)
+    {
+        long t0 = System.nanoTime();
+        try
+        {
+            return s.doit(pgm, in, out);
+        }
+        finally
+        {
+            long dt = System.nanoTime() - t0;
+            int i = s.index;
+            counts[i]++;
+            nanos[i] += dt;
+            histogram[Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(dt))]++;
+        }
+    }
+
+    /**
+     * Print the <i>top</i> lines that took the most time, and the histogram.
+     */
+    void report (int top, PrintStream out)
+    {
+        long total = 0;
+        long statements = 0;
+        int used = 0;
+        for (int i = 0; i < lines.length; i++)
+        {
+            total += nanos[i];
+            statements += counts[i];
+            if (counts[i] != 0)
+            {
+                used++;
+            }
+        }
+        Integer[] order = new Integer[used];
+        for (int i = 0, n = 0; i < lines.length; i++)
+        {
+            if (counts[i] != 0)
+            {
+                order[n++] = i;
+            }
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(nanos[b], nanos[a]));
+
+        out.printf(Locale.ROOT, "%d statements in %.3f ms, %d of %d lines ran%n",
+                statements, total / 1e6, used, lines.length);
+        out.println("    line        count     total ms      avg us      %");
+        for (int k = 0; k < Math.min(top, used); k++)
+        {
+            int i = order[k];
+            out.printf(Locale.ROOT, "%8d %12d %12.3f %11.3f %6.1f%n", lines[i], counts[i], nanos[i] / 1e6,
+                    nanos[i] / 1e3 / counts[i], (total == 0) ? 0.0 : 100.0 * nanos[i] / total);
+        }
+
+        long most = 0;
+        for (long h : histogram)
+        {
+            most = Math.max(most, h);
+        }
+        if (most == 0)
+        {
+            return;
+        }
+        out.println("statement time    count");
+        for (int b = 0; b < BUCKETS; b++)
+        {
+            if (histogram[b] == 0)
+            {
+                continue;
+            }
+            StringBuilder bar = new StringBuilder();
+            for (long n = (histogram[b] * 40 + most - 1) / most; n > 0; n--)
+            {
+                bar.append('#');
+            }
+            out.printf(Locale.ROOT, "  < %-9s %12d %s%n", time(1L << b), histogram[b], bar);
+        }
+    }
+
+    private static String time (long ns)
+    {
+        if (ns < 1000)
+        {
+            return ns + " ns";
+        }
+        if (ns < 1000000)
+        {
+            return (ns / 1000) + " us";
+        }
+        if (ns < 1000000000)
+        {
+            return (ns / 1000000) + " ms";
+        }
+        return (ns / 1000000000) + " s";
+    }
+}
@@ -17,19 +17,19 @@
  */
 package basic_1;
 
-import streameditor.StreamingTextArea;
+import streameditor.Terminal;
 import basic_1.util.RedBlackTree;
 import com.sun.speech.freetts.VoiceManager;
 import com.sun.speech.freetts.audio.AudioPlayer;
 import com.sun.speech.freetts.audio.SingleFileAudioPlayer;
 import midisystem.MidiSynthSystem;
 import misc.MainWindow;
-import org.mathIT.util.FunctionParser;
 
 import javax.sound.sampled.AudioFileFormat;
 import java.io.*;
-import java.net.Socket;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RecursiveAction;
 
 import static basic_1.ParseStatement.statement;
 import static misc.Misc.formatBasicLine;
@@ -37,12 +37,15 @@ import static misc.Misc.formatBasicLine;
 /**
  * This class instantiates a BASIC program. A valid program is one that is
  * parsed and ready to run. You can run it by invoking the run() method. The
- * standard input and output of the basic_prg_running basic program can either
+ * standard input and output of the running basic program can either
  * be passed into the <b>run</b> method, or they can be presumed to be the in
  * and out streams referenced by the <b>System</b> class.
  * <p>
- * This class uses Red-Black trees to hold the parsed statements and the symbol
- * table.
+ * This class uses a Red-Black tree to hold the parsed statements. Variables
+ * live in a flat frame indexed by the slot each name got from the program's
+ * SlotTable when it was tokenized. Before a run the statements are linked into a flat table so that
+ * the interpreter loop can follow direct references instead of searching
+ * the tree on every step.
  *
  * @author Chuck McManis
  * @version 1.1
@@ -50,96 +53,175 @@ import static misc.Misc.formatBasicLine;
  */
 public class Program //implements Runnable, Serializable
 {
-    public final StreamingTextArea area;
+    public final Terminal area;
+    /* thread id to terminal map, SEND writes into these */
+    public static final ConcurrentHashMap<Long, Terminal> streamMap = new ConcurrentHashMap<>();
     // this tree holds all of the statements.
     private final RedBlackTree<Integer, Statement> stmts = new RedBlackTree<>();
-    public boolean basic_prg_running = true;  // Program basic_prg_running
-    public boolean thread_running = true; // Thread basic_prg_running 
+    // flat statement table built by link(), indexed parallel to lineIndex.
+    private Statement[] table = new Statement[0];
+    private int[] lineIndex = new int[0];
+    private boolean linked = false;
+    // a stop or kill asked for by another thread, see requestStop().
+    private static final int RUNNING = 0;
+    private static final int STOP = 1;
+    private static final int KILL = 2;
+    private volatile int stopRequest = RUNNING;
     public final long basetime = System.currentTimeMillis();
-    public final HashMap<String, FunctionParser> defFuncs = new HashMap<>();
-
-    public static class ExtendedSocket {
-        private final Closeable sock;
-        public boolean textMode = false;
-        public ExtendedSocket(Closeable s) {
-            this.sock = s;
-        }
-        public Socket getSocket() {
-            try {
-                return (Socket)sock;
-            } catch (ClassCastException e) {
-                throw new BASICRuntimeError("not a Socket");
-            }
-        }
-    }
-
-    public final HashMap<String, ExtendedSocket> sockMap = new HashMap<>();
+    // compile hot expressions to bytecode, switched by the JIT command.
+    public boolean jit = Boolean.getBoolean("basic.jit");
+    // profile the next RUN, switched by the PROFILE command.
+    public boolean profiling = Boolean.getBoolean("basic.profile");
+    // counters of the last profiled run, null if it wasn't profiled.
+    private Profiler profiler;
+    // index of the line being linked, Statement.link() takes it.
+    int linking;
+    // counts root expression evaluations, SharedExpression caches by it.
+    long epoch = 0;
+
+    // the TCP connections of CONNECT, LISTEN and ACCEPT, by handle.
+    public final Network sockMap = new Network();
     private AudioPlayer audioPlayer;
-    // this tree holds all of the variables.
-    private RedBlackTree<String, Variable> vars = new RedBlackTree<>();
-    private Stack<Statement> stmtStack = new Stack<>();
-    private Vector<Token> dataStore = new Vector<>();
+    // slot of every variable name of this program, see SlotTable.
+    final SlotTable slots = new SlotTable();
+    // the variable frame, indexed by the slot of each variable name.
+    private double[] numVars = new double[0];
+    private String[] strVars = new String[0];
+    private Variable[] arrays = new Variable[0];
+    private boolean[] defined = new boolean[0];
+    // DEF FN functions by the slot of their name.
+    private DefinedFunction[] functions = new DefinedFunction[0];
+    private final ControlStack stmtStack = new ControlStack();
+    // DATA items in program order, filled before the run starts.
+    private Token[] dataStore = new Token[0];
+    private int dataCount = 0;
     private int dataPtr = 0;
     private Random r = new Random(0);
+    // string expressions and PRINT build their text in here, see
+    // Expression.appendTo(). Used like a stack, callers cut it back.
+    private final StringBuilder strBuf = new StringBuilder(256);
+    private byte[] outBytes = new byte[256];
 
-    public Program(StreamingTextArea ta) {
+    public Program(Terminal ta) {
         area = ta;
     }
 
+    // sources with at least this many lines are parsed in parallel, if
+    // there is more than one processor; on one the hand-off costs more
+    // than it brings.
+    private static final int PARALLEL_LINES = 2048;
+    private static final boolean PARALLEL_LOAD = Runtime.getRuntime().availableProcessors() > 1;
+    // lines per parse task when parsing in parallel.
+    private static final int CHUNK_LINES = 512;
+
+    /**
+     * Parses lines[from..to) of a source into statements[]. Big ranges are
+     * split and parsed on the fork-join pool, each leaf with a tokenizer of
+     * its own. A leaf stops at its first bad line and records the error by
+     * line index, so the caller can report the first one in the file no
+     * matter which task finished first.
+     */
+    private static final class LineParser extends RecursiveAction {
+        public static final long serialVersionUID = 1L;
+
+        private final SlotTable slots;
+        private final String[] lines;
+        private final Statement[] statements;
+        private final BASICSyntaxError[] errors;
+        private final String[] errorText;
+        private final int from;
+        private final int to;
+
+        LineParser(SlotTable slots, String[] lines, Statement[] statements, BASICSyntaxError[] errors,
+                   String[] errorText, int from, int to) {
+            this.slots = slots;
+            this.lines = lines;
+            this.statements = statements;
+            this.errors = errors;
+            this.errorText = errorText;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (PARALLEL_LOAD && lines.length >= PARALLEL_LINES && to - from > CHUNK_LINES) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new LineParser(slots, lines, statements, errors, errorText, from, mid),
+                        new LineParser(slots, lines, statements, errors, errorText, mid, to));
+                return;
+            }
+            LexicalTokenizer lt = new LexicalTokenizer(slots);
+            for (int i = from; i < to; i++) {
+                String lineData = formatBasicLine(lines[i]);
+                lt.feedNewLine(lineData);
+                Token t = lt.nextToken();
+                if (t.typeNum() != KeyWords.CONSTANT) {
+                    errors[i] = new BASICSyntaxError("Line failed to start with a line number.");
+                    return;
+                }
+                Statement s;
+                try {
+                    s = statement(lt);
+                } catch (BASICSyntaxError bse) {
+                    errors[i] = bse;
+                    errorText[i] = lt.showError();
+                    return;
+                }
+                s.addText(lineData);
+                s.addLine((int) t.numValue());
+                statements[i] = s;
+            }
+        }
+    }
+
     /**
      * There are two ways to create a new program object, you can load one from
      * an already open stream or you can pass in a file name and load one from
      * the file system.
+     * <p>
+     * The lines are parsed independently of each other, big sources on
+     * several threads, and then added in the order of the file, so a line
+     * number that occurs twice keeps its last statement. On errors the first
+     * bad line of the file is reported.
      */
-    public static Program load(InputStream source, StreamingTextArea ar) throws IOException, BASICSyntaxError {
+    public static Program load(InputStream source, Terminal ar) throws IOException, BASICSyntaxError {
         BufferedReader dis
                 = new BufferedReader(new InputStreamReader(source));
-
-        LexicalTokenizer lt = new LexicalTokenizer();
+        ArrayList<String> text = new ArrayList<>();
         String lineData;
-        Statement s;
-        Token t;
-        Program prog = new Program(ar);
-
-        while (true) {
-            // read a line of our BASIC program.
-            lineData = dis.readLine();
-
-            // if EOF simply return.
-            if (lineData == null) {
-                return prog;
-            }
-
-            // if the line was blank, ignore it.
-            if (lineData.length() == 0) {
-                continue;
-            }
 
-            lineData = formatBasicLine(lineData);
-            lt.feedNewLine(lineData);
-            t = lt.nextToken();
-            if (t.typeNum() != KeyWords.CONSTANT) {
-                throw new BASICSyntaxError("Line failed to start with a line number.");
+        // read the whole program, blank lines are ignored.
+        while ((lineData = dis.readLine()) != null) {
+            if (lineData.length() != 0) {
+                text.add(lineData);
             }
+        }
 
-            try {
-                s = statement(lt);
-            } catch (BASICSyntaxError bse) {
-                ar.getPrintStream().println("Syntax error: " + bse.getMsg());
-                ar.getPrintStream().println(lt.showError());
-                throw bse;
+        String[] lines = text.toArray(new String[0]);
+        Statement[] statements = new Statement[lines.length];
+        BASICSyntaxError[] errors = new BASICSyntaxError[lines.length];
+        String[] errorText = new String[lines.length];
+        Program prog = new Program(ar);
+        // small sources are parsed right here, invoke() only forks for big ones.
+        new LineParser(prog.slots, lines, statements, errors, errorText, 0, lines.length).invoke();
+
+        for (int i = 0; i < lines.length; i++) {
+            if (errors[i] != null) {
+                if (errorText[i] != null) {
+                    ar.getPrintStream().println("Syntax error: " + errors[i].getMsg());
+                    ar.getPrintStream().println(errorText[i]);
+                }
+                throw errors[i];
             }
-            s.addText(lineData);
-            s.addLine((int) t.numValue());
-            prog.add((int) t.numValue(), s);
+            Statement s = statements[i];
+            prog.add(s.lineNo(), s);
         }
+        return prog;
     }
 
     public void RemoveAllSockets() throws IOException {
-        for (ExtendedSocket s : sockMap.values()) {
-            s.sock.close();
-        }
-        sockMap.clear();
+        sockMap.closeAll();
     }
 
     /**
@@ -149,7 +231,7 @@ public class Program //implements Runnable, Serializable
      * @throws BASICSyntaxError when the file does not contain a properly formed
      *                          BASIC program.
      */
-    public static Program load(String source, StreamingTextArea ar) throws IOException, BASICSyntaxError {
+    public static Program load(String source, Terminal ar) throws IOException, BASICSyntaxError {
         // XXX this needs to use the SourceManager class //
         FileInputStream fis = new FileInputStream(source);
         Program r;
@@ -177,6 +259,7 @@ public class Program //implements Runnable, Serializable
      */
     void add(int line, Statement s) {
         stmts.put(line, s);
+        linked = false;
     }
 
     /**
@@ -186,6 +269,74 @@ public class Program //implements Runnable, Serializable
      */
     void del(int line) {
         stmts.remove(line);
+        linked = false;
+    }
+
+    /**
+     * Link the program. All statements are copied into a dense table in
+     * line number order and every statement gets its fall-through successor
+     * and its constant jump targets resolved. While the program stays linked
+     * nextStatement() and getStatement() don't touch the statement tree.
+     * Adding or deleting a line drops the program back to unlinked mode.
+     */
+    void link() {
+        int size = stmts.size();
+        Statement[] tab = new Statement[size];
+        int[] lines = new int[size];
+        int i = 0;
+        for (Map.Entry<Integer, Statement> entry : stmts.entrySet()) {
+            lines[i] = entry.getKey();
+            tab[i++] = entry.getValue();
+        }
+        table = tab;
+        lineIndex = lines;
+        linked = true;
+        for (i = 0; i < size; i++) {
+            linking = i;
+            tab[i].link(this, (i + 1 < size) ? tab[i + 1] : null);
+        }
+    }
+
+    /**
+     * Returns true if the statements are linked, that is their successors
+     * and constant jump targets are valid.
+     */
+    public boolean isLinked() {
+        return linked;
+    }
+
+    /**
+     * The shared string builder of this program. Whoever appends to it
+     * must set its length back to where it started when done.
+     */
+    public StringBuilder stringBuffer() {
+        return strBuf;
+    }
+
+    /**
+     * Write what is in the string buffer from <i>start</i> on to <i>out</i>
+     * and cut the buffer back to <i>start</i>. Plain ASCII, which is what
+     * nearly all output is, goes out through a reused byte array instead
+     * of a String.
+     */
+    public void print(PrintStream out, int start) {
+        StringBuilder sb = strBuf;
+        int n = sb.length() - start;
+        if (n > outBytes.length) {
+            outBytes = new byte[Math.max(n, outBytes.length * 2)];
+        }
+        byte[] b = outBytes;
+        for (int i = 0; i < n; i++) {
+            char c = sb.charAt(start + i);
+            if (c >= 0x80) {
+                out.print(sb.substring(start));
+                sb.setLength(start);
+                return;
+            }
+            b[i] = (byte) c;
+        }
+        out.write(b, 0, n);
+        sb.setLength(start);
     }
 
     /**
@@ -200,31 +351,138 @@ public class Program //implements Runnable, Serializable
         return result;
     }
 
+    /**
+     * Make sure the variable frame has room for <i>slot</i>. Slots are
+     * handed out while lines are parsed, so lines typed in after a RUN can bring
+     * in names the frame hasn't seen yet.
+     */
+    private void growFrame(int slot) {
+        int size = Math.max(slot + 1, Math.max(16, slots.size()));
+        numVars = Arrays.copyOf(numVars, size);
+        strVars = Arrays.copyOf(strVars, size);
+        arrays = Arrays.copyOf(arrays, size);
+        defined = Arrays.copyOf(defined, size);
+    }
+
+    /**
+     * Forget all variables and size the frame for every name known so far.
+     */
+    private void clearVariables() {
+        int size = Math.max(16, slots.size());
+        numVars = new double[size];
+        strVars = new String[size];
+        arrays = new Variable[size];
+        defined = new boolean[size];
+    }
+
+    /**
+     * Make the DEF FN function <i>f</i> known, replacing an older one of the
+     * same name.
+     */
+    public void defineFunction(DefinedFunction f) {
+        if (f.slot >= functions.length) {
+            functions = Arrays.copyOf(functions, Math.max(f.slot + 1, slots.size()));
+        }
+        functions[f.slot] = f;
+    }
+
+    /**
+     * Evaluate a DEF FN function referenced by <i>v</i>. The arguments are
+     * all evaluated before the first one is bound, so an argument can use a
+     * variable that is also a parameter name, as in FNA(X + 1).
+     */
+    private double callFunction(Variable v) throws BASICRuntimeError {
+        int fslot = v.slot;
+        DefinedFunction f = (fslot < functions.length) ? functions[fslot] : null;
+        if (f == null) {
+            throw new BASICRuntimeError("Func not defined: " + v.name.substring(2).toUpperCase());
+        }
+        Variable[] params = f.params;
+        if (v.numExpn() != params.length) {
+            throw new BASICRuntimeError("Wrong number of arguments for " + f.name.toUpperCase());
+        }
+        if (params.length == 1) {
+            return callFunction(f, params[0], v.expn(0).value(this));
+        }
+        double[] args = new double[params.length];
+        for (int i = 0; i < args.length; i++) {
+            args[i] = v.expn(i).value(this);
+        }
+        return callFunction(f, 0, args);
+    }
+
+    /**
+     * Bind parameter <i>n</i> of <i>f</i> and go on with the next one; run the
+     * body when all are bound. Each level puts its parameter back on the way
+     * out, also when the body fails.
+     */
+    private double callFunction(DefinedFunction f, int n, double[] args) throws BASICRuntimeError {
+        if (n == args.length - 1) {
+            return callFunction(f, f.params[n], args[n]);
+        }
+        int slot = f.params[n].slot;
+        if (slot >= defined.length) {
+            growFrame(slot);
+        }
+        double oldValue = numVars[slot];
+        boolean oldDefined = defined[slot];
+        Variable oldArray = arrays[slot];
+        numVars[slot] = f.params[n].isInteger() ? (int) args[n] : args[n];
+        defined[slot] = true;
+        arrays[slot] = null;
+        try {
+            return callFunction(f, n + 1, args);
+        } finally {
+            numVars[slot] = oldValue;
+            defined[slot] = oldDefined;
+            arrays[slot] = oldArray;
+        }
+    }
+
+    /**
+     * Bind the last (or only) parameter <i>p</i> of <i>f</i> to <i>arg</i> and
+     * evaluate the body.
+     */
+    private double callFunction(DefinedFunction f, Variable p, double arg) throws BASICRuntimeError {
+        int slot = p.slot;
+        if (slot >= defined.length) {
+            growFrame(slot);
+        }
+        double oldValue = numVars[slot];
+        boolean oldDefined = defined[slot];
+        Variable oldArray = arrays[slot];
+        numVars[slot] = p.isInteger() ? (int) arg : arg;
+        defined[slot] = true;
+        arrays[slot] = null;
+        try {
+            return f.body.value(this);
+        } finally {
+            numVars[slot] = oldValue;
+            defined[slot] = oldDefined;
+            arrays[slot] = oldArray;
+        }
+    }
+
     /**
      * Return the numeric value of a variable in the symbol table.
      *
      * @throws BASICRuntimeError if the variable isn't defined.
      */
     public double getVariable(Variable v) throws BASICRuntimeError {
-        double[] ii = getIndices(v);
-        if (v.name.startsWith("fn")) { // TODO: function?
-            String fname = v.name.substring(2).toUpperCase();
-            FunctionParser fp = defFuncs.get (fname);
-            if (fp == null) {
-                throw new BASICRuntimeError("Func not defined: " + fname);
-            }
-            if (ii.length == 1)
-                return fp.evaluate(0,ii[0]);
-            return fp.evaluate(0, ii[0], ii[1]);
+        if (v.isFunction()) {
+            return callFunction(v);
         }
-        Variable vi = vars.get(v.name);
-        if (vi == null) {
-            throw new BASICRuntimeError("Undefined variable '" + v.name + "'");
-        }
-        if (!vi.isArray()) {
-            return vi.numValue();
+        int slot = v.slot;
+        if (slot < defined.length) {
+            Variable vi = arrays[slot];
+            if (vi != null) {
+                return vi.numValue(this, v);
+            }
+            if (defined[slot]) {
+                return numVars[slot];
+            }
         }
-        return vi.numValue(ii);
+        throw new BASICRuntimeError("Undefined variable '" + v.name + "'");
     }
 
     /**
@@ -233,15 +491,17 @@ public class Program //implements Runnable, Serializable
      * BASICRuntime error.
      */
     String getString(Variable v) throws BASICRuntimeError {
-        Variable vi = vars.get(v.name);
-        if (vi == null) {
-            throw new BASICRuntimeError("Variable " + v.name + " has not been initialized.");
-        }
-        if (!v.isArray()) {
-            return vi.stringValue();
+        int slot = v.slot;
+        if (slot < defined.length) {
+            Variable vi = arrays[slot];
+            if (vi != null && v.isArray()) {
+                return vi.stringValue(this, v);
+            }
+            if (defined[slot]) {
+                return v.isString() ? strVars[slot] : "" + numVars[slot];
+            }
         }
-        double[] ii = getIndices(v);
-        return vi.stringValue(ii);
+        throw new BASICRuntimeError("Variable " + v.name + " has not been initialized.");
     }
 
     /**
@@ -249,21 +509,56 @@ public class Program //implements Runnable, Serializable
      * is the first time we have seen the variable, create a place for it in the
      * symbol table.
      */
-    public <T> void setVariable(Variable v, T value) throws BASICRuntimeError {
-        Variable vi = vars.get(v.name);
-        if (vi == null) {
-            if (v.isArray()) {
-                throw new BASICRuntimeError("Array must be declared in a DIM statement");
-            }
-            vi = new Variable(v.name);
-            vars.put(v.name, vi);
+    public void setVariable(Variable v, double value) throws BASICRuntimeError {
+        int slot = v.slot;
+        if (slot >= defined.length) {
+            growFrame(slot);
         }
-        if (!vi.isArray()) {
-            vi.setValue(value);
+        Variable vi = arrays[slot];
+        if (vi != null) {
+            vi.setValue(value, this, v);
             return;
         }
-        double[] ii = getIndices(v);
-        vi.setValue(value, ii);
+        if (v.isArray() && !defined[slot]) {
+            throw new BASICRuntimeError("Array must be declared in a DIM statement");
+        }
+        numVars[slot] = v.isInteger() ? (int) value : value;
+        defined[slot] = true;
+    }
+
+    /**
+     * Set the string variable <i>name</i> to have value <i>value</i>.
+     */
+    public void setVariable(Variable v, String value) throws BASICRuntimeError {
+        int slot = v.slot;
+        if (slot >= defined.length) {
+            growFrame(slot);
+        }
+        Variable vi = arrays[slot];
+        if (vi != null) {
+            vi.setValue(value, this, v);
+            return;
+        }
+        if (v.isArray() && !defined[slot]) {
+            throw new BASICRuntimeError("Array must be declared in a DIM statement");
+        }
+        strVars[slot] = value;
+        defined[slot] = true;
+    }
+
+    /**
+     * Return the symbol table entry of the array named like <i>v</i>, for
+     * statements that work on a whole array.
+     *
+     * @throws BASICRuntimeError if there is no such array.
+     */
+    public Variable getArray(Variable v) throws BASICRuntimeError {
+        int slot = v.slot;
+        Variable vi = (slot < arrays.length) ? arrays[slot] : null;
+        if (vi == null) {
+            throw new BASICRuntimeError("Array must be declared in a DIM statement");
+        }
+        return vi;
     }
 
     /**
@@ -272,10 +567,13 @@ public class Program //implements Runnable, Serializable
      * This is common to most BASIC implementations.
      */
     public void declareArray(Variable v) throws BASICRuntimeError {
-        Variable vi;
         double[] ii = getIndices(v);
-        vi = new Variable(v.name, ii);
-        vars.put(v.name, vi);
+        int slot = v.slot;
+        if (slot >= defined.length) {
+            growFrame(slot);
+        }
+        arrays[slot] = new Variable(v.name, slot, ii);
+        defined[slot] = false;
     }
 
     /**
@@ -287,6 +585,8 @@ public class Program //implements Runnable, Serializable
     public Statement nextStatement(Statement s) {
         if (s == null) {
             return null;
+        } else if (linked) {
+            return s.succ;
         } else if (s.nxt != null) {
             return s.nxt;
         }
@@ -297,6 +597,10 @@ public class Program //implements Runnable, Serializable
      * Return the statment whose line number is <i>line</i>
      */
     public Statement getStatement(int line) {
+        if (linked) {
+            int i = Arrays.binarySearch(lineIndex, line);
+            return (i < 0) ? null : table[i];
+        }
         return stmts.get(line);
     }
 
@@ -316,18 +620,30 @@ public class Program //implements Runnable, Serializable
         }
     }
 
-    Program renumber(int start, int step) throws NullPointerException {
-        Renumberer ren = new Renumberer(this, start, step);
-        Set<Integer> set = stmts.keySet();
-        for (Integer i : set) {
-            Statement stat = stmts.get(i);
-            ren.add(stat.asString());
+    /**
+     * Renumber the program in place: the lines get <i>start</i>,
+     * <i>start + step</i>, ... and every constant jump target follows its
+     * line. The parsed statements are kept, only their numbers change.
+     */
+    Program renumber(int start, int step) throws BASICRuntimeError {
+        int size = stmts.size();
+        Statement[] tab = new Statement[size];
+        int[] lines = new int[size];
+        int i = 0;
+        for (Map.Entry<Integer, Statement> entry : stmts.entrySet()) {
+            lines[i] = entry.getKey();
+            tab[i++] = entry.getValue();
+        }
+        Renumberer ren = new Renumberer(lines, start, step);
+        stmts.clear();
+        for (Statement s : tab) {
+            s.renumberLine(ren);
+            stmts.put(s.lineNo(), s);
         }
-        ren.doIt();
-        return ren.finish();
+        linked = false;
+        return this;
     }
 
-
     /**
      * This is the first variation on list, it simply list from the starting
      * line to the the end of the program.
@@ -348,26 +664,27 @@ public class Program //implements Runnable, Serializable
      * Run the program and use the passed in streams as its input and output
      * streams.
      * <p>
-     * Prior to basic_prg_running the program the statement stack is cleared,
-     * and the data fifo is also cleared. Thus re-basic_prg_running a stopped
+     * Prior to running the program the statement stack is cleared,
+     * and the data fifo is also cleared. Thus re-running a stopped
      * program will always work correctly.
      *
-     * @throws BASICRuntimeError if an error occurs while basic_prg_running.
+     * @throws BASICRuntimeError if an error occurs while running.
      */
     public void run(InputStream in, OutputStream out, int firstline) throws BASICError, IOException {
         PrintStream pout;
-        Enumeration<Map.Entry<Integer, Statement>> e = stmts.elements();
-        stmtStack = new Stack<>();    // assume no stacked statements ...
-        dataStore = new Vector<>();   // ...  and no data to be read.
+        stmtStack.clear();    // assume no stacked statements ...
+        dataCount = 0;        // ...  and no data to be read.
         dataPtr = 0;
-        Statement s;
+        strBuf.setLength(0);  // an error may have left text in the buffer.
 
-        vars = new RedBlackTree<>();
+        clearVariables();
 
         // if the program isn't yet valid.
-        if (!e.hasMoreElements()) {
+        if (stmts.isEmpty()) {
             return;
         }
+        link();
+        profiler = profiling ? new Profiler(lineIndex) : null;
 
         if (out instanceof PrintStream) {
             pout = (PrintStream) out;
@@ -376,50 +693,36 @@ public class Program //implements Runnable, Serializable
         }
 
         /* First we load all of the data statements */
-        while (e.hasMoreElements()) {
-            s = (e.nextElement()).getValue();
-            //System.out.println(s + " -- " + s.unparse());  // TODO test
-            if (s.keyword == KeyWords.DATA) {
-                s.execute(this, in, pout);
+        for (Statement d : table) {
+            if (d.keyword == KeyWords.DATA) {
+                d.execute(this, in, pout);
             }
         }
 
-        e = stmts.elements();
-        s = e.nextElement().getValue();
+        int first = 0;
         if (firstline != 0)  // Skip lines if desired
         {
-            do {
-                if (s.line >= firstline) {
-                    break;
-                }
-                s = e.nextElement().getValue();
-            } while (e.hasMoreElements());
-        }
-        do {
-            //Thread.yield();   // Let others run
-            if (!basic_prg_running) {
-                basic_prg_running = true;
-                pout.println("Stopped at :" + s);
-                push(s);
-                break;
-            }
-            if (!thread_running) {
-                thread_running = true;
-                throw new BASICError ("Basic Thread forced to stop");
-            }
-            if (s.keyword != KeyWords.DATA) {
-
-                s = s.execute(this, in, pout);
-            } else {
-                s = nextStatement(s);
+            while (first < table.length - 1 && lineIndex[first] < firstline) {
+                first++;
             }
         }
-        while (s != null);
+        execute(table[first], in, pout);
         RemoveAllSockets();
         if (MidiSynthSystem.wasUsed())
             Objects.requireNonNull(MidiSynthSystem.get()).shutdown();
     }
 
+    /**
+     * Print the <i>top</i> lines of the last profiled run, see Profiler.
+     */
+    void profile(int top, PrintStream p) {
+        if (profiler == null) {
+            p.println("No profile, use PROFILE ON and RUN the program.");
+        } else {
+            profiler.report(top, p);
+        }
+    }
+
     /**
      * This method resumes a program that has been stopped. If the program
      * wasn't really stopped it throws a BASICRuntimeError.
@@ -433,32 +736,88 @@ public class Program //implements Runnable, Serializable
         if ((s == null) || (s.keyword != KeyWords.STOP)) {
             throw new BASICRuntimeError("This program was not previously stopped.");
         }
-        s = nextStatement(s);
-        do {
-            s = s.execute(this, in, pout);
+        if (!linked) {
+            link();
         }
-        while (s != null);
+        execute(nextStatement(s), in, pout);
     }
 
     void cont(InputStream in, PrintStream pout) throws BASICRuntimeError {
         Statement s;
 
         s = pop();
-        do {
-            if (!basic_prg_running) {
-                basic_prg_running = true;
-                pout.println("Stopped at :" + s);
-                push(s);
-                break;
-            }
-            if (s.keyword != KeyWords.DATA) {
+        if (!linked) {
+            link();
+        }
+        execute(s, in, pout);
+    }
 
-                s = s.execute(this, in, pout);
-            } else {
-                s = nextStatement(s);
+    /**
+     * Run statements from <i>s</i> on until the program ends or another
+     * thread stops it. A stop or kill request is only looked at when control
+     * goes back to the same or an earlier line (GOTO, NEXT, RETURN ...).
+     * A program that keeps running has to do that all the time, so the
+     * request is seen within one turn of the loop, and straight code pays
+     * nothing for it.
+     * <p>
+     * Errors are not caught per statement: the loop catches them once and
+     * attaches the statement that was running.
+     */
+    private void execute(Statement s, InputStream in, PrintStream pout) throws BASICRuntimeError {
+        boolean killed = false;
+        try {
+            while (s != null) {
+                Statement n;
+                if (s.keyword != KeyWords.DATA) {
+                    n = (profiler == null) ? s.doit(this, in, pout) : profiler.execute(s, this, in, pout);
+                } else {
+                    n = nextStatement(s);
+                }
+                if (n != null && n.index <= s.index && n != s.nxt && stopRequest != RUNNING) {
+                    killed = stopRequest == KILL;
+                    stopRequest = RUNNING;
+                    if (!killed) {
+                        pout.println("Stopped at :" + n);
+                        push(n);
+                    }
+                    break;
+                }
+                s = n;
             }
+        } catch (BASICRuntimeError e) {
+            // the statement is attached here, once, not by every level.
+            throw e.at(s);
+        } catch (Exception ex) {
+            throw new BASICRuntimeError(s, ex);
+        }
+        if (killed) {
+            throw new BASICError("Basic Thread forced to stop");
         }
-        while (s != null);
+    }
+
+    /**
+     * Forget a stop or kill request that came while nothing ran. Whoever
+     * starts a run calls this before the thread that runs the program
+     * starts it; run(), cont() and resume() leave the request alone, so
+     * one that comes in between is not lost.
+     */
+    void clearStopRequest() {
+        stopRequest = RUNNING;
+    }
+
+    /**
+     * Stop the running program, it can be continued with CONT. May be
+     * called from any thread.
+     */
+    public void requestStop() {
+        stopRequest = STOP;
+    }
+
+    /**
+     * End the running program with an error. May be called from any thread.
+     */
+    public void requestKill() {
+        stopRequest = KILL;
     }
 
 
@@ -468,37 +827,69 @@ public class Program //implements Runnable, Serializable
      */
 
     /**
-     * Push this statement on the stack (one of FOR, GOSUB, or STOP)
+     * Return the control stack, FOR and NEXT use it directly to keep the
+     * loop bounds in the frame.
+     */
+    public ControlStack getControlStack() {
+        return stmtStack;
+    }
+
+    /**
+     * Push this statement on the stack (one of FOR, DO, GOSUB, or STOP)
      */
     public void push(Statement s) {
-        stmtStack.push(s);
+        byte kind;
+        switch (s.keyword) {
+            case GOSUB:
+            case ON_GOSUB:
+                kind = ControlStack.GOSUB;
+                break;
+            case FOR:
+                kind = ControlStack.FOR;
+                break;
+            case DO:
+                kind = ControlStack.DO;
+                break;
+            default:
+                kind = ControlStack.STOP;
+                break;
+        }
+        stmtStack.push(kind, s);
     }
 
     /**
      * Pop the next statement off the stack, return NULL if the stack is empty.
      */
     public Statement pop() {
-        if (stmtStack.isEmpty()) {
-            return null;
-        }
         return stmtStack.pop();
     }
 
+    /**
+     * Return the statement on top of the stack without removing it, or
+     * NULL if the stack is empty.
+     */
+    public Statement peek() {
+        return stmtStack.peek();
+    }
+
     /**
      * Add a token to the data FIFO.
      */
     public void pushData(Token t) {
-        dataStore.addElement(t);
+        if (dataCount == dataStore.length) {
+            dataStore = Arrays.copyOf(dataStore, Math.max(16, dataCount * 2));
+        }
+        dataStore[dataCount++] = t;
     }
 
     /**
      * Get the next token in the FIFO, return null if the FIFO is empty.
      */
     public Token popData() {
-        if (dataPtr > (dataStore.size() - 1)) {
+        if (dataPtr >= dataCount) {
             return null;
         }
-        return dataStore.elementAt(dataPtr++);
+        return dataStore[dataPtr++];
     }
 
     /**
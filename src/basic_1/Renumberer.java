@@ -1,97 +1,119 @@
 package basic_1;
 
-import java.io.ByteArrayInputStream;
-import java.io.InputStream;
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 
+/**
+ * The line number mapping of one RENUMBER. The old line numbers are kept
+ * sorted, line <i>i</i> of the program gets <i>start + i * step</i>, so
+ * mapping a number is a binary search. A number that is not a line of the
+ * program is left as it is.
+ * <p>
+ * The statements are renumbered in place, see Statement.renumber(). Their
+ * text is only rewritten when it is asked for (LIST, SAVE), by rewrite().
+ * Both treat the same things as jump targets: a number right after THEN,
+ * and a number after GOTO or GOSUB (or the list of an ON) that is not part
+ * of an expression. Computed targets are left alone.
+ */
 public class Renumberer {
-    private final HashMap<String, String> jumpMap = new HashMap<>();
-    private final ArrayList<String> lines = new ArrayList<>();
-    private final Program prg;
+    private final int[] oldLines;
     private final int start;
     private final int step;
+    // for rewrite(), the text is only asked for on one thread at a time.
+    // Its variables are thrown away, they get slots of their own.
+    private final LexicalTokenizer lt = new LexicalTokenizer(new SlotTable());
+    private int[] at = new int[128];
 
-    public Renumberer(Program prg, int start, int step) {
-        this.prg = prg;
+    /**
+     * @param oldLines the line numbers of the program in ascending order
+     */
+    Renumberer(int[] oldLines, int start, int step) {
+        if (start < 0 || step <= 0
+                || (long) start + (long) step * Math.max(0, oldLines.length - 1) > Integer.MAX_VALUE) {
+            throw new BASICRuntimeError("Bad RENUMBER start or step.");
+        }
+        this.oldLines = oldLines;
         this.start = start;
         this.step = step;
     }
 
-    public void add(String s) {
-        lines.add(s);
+    /**
+     * Return the new number of line <i>line</i>.
+     */
+    public int map(int line) {
+        int i = Arrays.binarySearch(oldLines, line);
+        return (i < 0) ? line : start + i * step;
     }
 
-    private boolean isLineNum(String in) {
-        try {
-            int i = Integer.parseInt(in);
-            return i >= 0;
-        } catch (NumberFormatException e) {
-            return false;
+    /**
+     * Return the text of a program line with its own number and its jump
+     * targets mapped. The line is lexed, not split at blanks, so spacing
+     * and strings don't matter; everything but the numbers is copied as it
+     * is.
+     */
+    String rewrite(String text) {
+        lt.feedNewLine(text);
+        char[] buf = lt.getBuffer();
+        // the tokenizer drops the blank after FN, so its positions are
+        // mapped back to the text.
+        if (at.length <= text.length()) {
+            at = new int[text.length() + 1];
         }
-    }
-
-    private int findJump(String[] arr, String what) throws NullPointerException {
-        for (int s = 0; s < arr.length; s++) {
-            if (arr[s].equalsIgnoreCase(what)) {
-                if (what.equalsIgnoreCase("then")) {
-                    if (isLineNum(arr[s + 1]))
-                        return s;
-                    return -1;
-                }
-                return s;
+        int[] at = this.at;
+        int j = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (buf[j] == text.charAt(i)) {
+                at[j++] = i;
             }
         }
-        return -1;
-    }
-
-    private void doForPass2(String keyword, String[] line) throws NullPointerException {
-        int g = findJump(line, keyword);
-        if (g >= 0) {
-            String targ = line[g+1];
-            if (targ.contains(",")) { // list
-                String[] ss = targ.split(",");
-                for (int n = 0; n<ss.length; n++) {
-                    ss[n] = jumpMap.get(ss[n]);
+        at[j] = text.length();
+        StringBuilder sb = new StringBuilder(text.length() + 8);
+        int copied = 0;
+        boolean first = true;
+        boolean target = false;   // the next number is a jump target
+        boolean then = false;     // ... and it follows THEN
+        boolean list = false;     // a ',' continues a list of targets
+        while (true) {
+            int from = lt.position();
+            Token t = lt.scanNext();
+            KeyWords type = t.typeNum();
+            if (type == KeyWords.EOL || type == KeyWords.ERROR
+                    || t.kwValue == KeyWords.REM || t.isSymbol('\'')) {
+                break;
+            }
+            int to = lt.position();
+            boolean mapIt = false;
+            if (type == KeyWords.CONSTANT && (first || target)) {
+                // a target must stand alone, "GOTO 100+X" is not renumbered.
+                Token n = lt.scanNext();
+                mapIt = first || then || LexicalTokenizer.endsLineNumber(n);
+                list = mapIt && !first && !then && n.isSymbol(',');
+                lt.moveTo(to, to);
+                target = false;
+                then = false;
+            } else if (list && t.isSymbol(',')) {
+                target = true;
+                list = false;
+            } else {
+                target = t.kwValue == KeyWords.GOTO || t.kwValue == KeyWords.GOSUB || t.kwValue == KeyWords.THEN;
+                then = t.kwValue == KeyWords.THEN;
+                list = false;
+            }
+            if (mapIt) {
+                while (from < to && isBlank(buf[from])) {
+                    from++;
                 }
-                line[g+1] = String.join(",", ss);
-            } else { // single number
-                line[g + 1] = jumpMap.get(targ);
+                while (to > from && isBlank(buf[to - 1])) {
+                    to--;
+                }
+                sb.append(text, copied, at[from]).append(map((int) t.numValue()));
+                copied = at[to];
             }
+            first = false;
         }
+        return (copied == 0) ? text : sb.append(text, copied, text.length()).toString();
     }
 
-    public void doIt() throws NullPointerException {
-        int num = this.start;
-        // pass 1
-        for (int s = 0; s < lines.size(); s++) {
-            String[] ss = lines.get(s).split(" ");
-            jumpMap.put(ss[0], "" + num);
-            ss[0] = jumpMap.get(ss[0]);
-            lines.set(s, String.join(" ", ss));
-            num += this.step;
-        }
-        // pass 2
-        for (int s = 0; s < lines.size(); s++) {
-            String[] ss = lines.get(s).split(" ");
-            doForPass2("goto", ss);
-            doForPass2("gosub", ss);
-            doForPass2("then", ss);
-            lines.set(s, String.join(" ", ss));
-        }
-    }
-
-    public Program finish() {
-        StringBuilder sb = new StringBuilder();
-        for (String s : lines) {
-            sb.append(s).append("\r\n");
-        }
-        InputStream targetStream = new ByteArrayInputStream(sb.toString().getBytes());
-        try {
-            return Program.load(targetStream, prg.area);
-        } catch (Exception e) {
-            System.out.println("ren fail " + e);
-        }
-        return null;
+    private static boolean isBlank(char c) {
+        return c == ' ' || c == '\t';
     }
 }
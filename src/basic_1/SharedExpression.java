@@ -0,0 +1,47 @@
+package basic_1;
+
+import java.io.PrintStream;
+
+/**
+ * A sub-expression that occurs more than once in the same expression tree.
+ * The ExpressionOptimizer puts one SharedExpression at every place the
+ * sub-expression occurs. Its value is computed once per evaluation of the
+ * root expression and then taken from the cache until the program starts
+ * the next root evaluation (see Program.epoch).
+ */
+class SharedExpression extends Expression
+{
+    private final Expression inner;
+    private long epoch = -1;
+    private double cached;
+
+    SharedExpression (Expression e)
+    {
+        super();
+        inner = e;
+    }
+
+    @Override
+    public double value (Program pgm) throws BASICRuntimeError
+    {
+        if (epoch == pgm.epoch)
+        {
+            return cached;
+        }
+        cached = inner.value(pgm);
+        epoch = pgm.epoch;
+        return cached;
+    }
+
+    @Override
+    public void print (PrintStream p)
+    {
+        inner.print(p);
+    }
+
+    @Override
+    public String toString ()
+    {
+        return inner.toString();
+    }
+}
@@ -0,0 +1,184 @@
+package basic_1;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The wakeup permits of one BASIC thread, for SLEEP * and WAKEUP.
+ * <p>
+ * A WAKEUP leaves a permit, whether the thread sleeps or not, and SLEEP *
+ * takes one, so a wakeup that comes early is not lost. Permits count: a
+ * thread that started n others and waits for n wakeups gets all of them,
+ * in the order they came. Each permit remembers the thread that gave it,
+ * WAKER tells which one ended the last SLEEP *, so a thread can wait for
+ * any of several others and still know who is done.
+ * <p>
+ * The permits are a ring of waker thread ids, filled by a compare-and-set
+ * on the tail like Mailbox does, taken only by the owner. Nothing is
+ * allocated per wait. If the ring is full the wakeup is only counted and
+ * its waker is not known. The owner parks while there is no permit, with
+ * or without a time limit.
+ */
+public final class Signal
+{
+    private static final int CAPACITY = 256;   // a power of two
+    private static final int MASK = CAPACITY - 1;
+
+    private static final ConcurrentHashMap<Long, Signal> signals = new ConcurrentHashMap<>();
+
+    // waker thread ids, 0 is a free slot.
+    private final AtomicLongArray slots = new AtomicLongArray(CAPACITY);
+    // next slot to claim, advanced by the wakers.
+    private final AtomicLong tail = new AtomicLong();
+    // next slot to take, only the owner writes it.
+    private volatile long head;
+    // wakeups that found the ring full.
+    private final AtomicLong overflow = new AtomicLong();
+    // the owner while it is parked in await().
+    private volatile Thread waiter;
+    // who gave the last permit taken, only the owner uses it.
+    private long waker;
+
+    private Signal ()
+    {
+    }
+
+    /**
+     * The permits of thread <i>threadId</i>, made on first use.
+     */
+    public static Signal of (long threadId)
+    {
+        return signals.computeIfAbsent(threadId, k -> new Signal());
+    }
+
+    /**
+     * The permits to wake thread <i>threadId</i> with, or null if there is
+     * no BASIC thread with that id.
+     */
+    public static Signal find (long threadId)
+    {
+        Signal s = signals.get(threadId);
+        if (s == null && Program.streamMap.containsKey(threadId))
+        {
+            s = of(threadId);
+        }
+        return s;
+    }
+
+    /**
+     * Drop the permits of a thread that has ended.
+     */
+    public static void remove (long threadId)
+    {
+        signals.remove(threadId);
+    }
+
+    /**
+     * Give the owner a permit from thread <i>fromId</i>. Never waits.
+     */
+    public void wake (long fromId)
+    {
+        long t;
+        do
+        {
+            t = tail.get();
+            if (t - head >= CAPACITY)
+            {
+                overflow.incrementAndGet();
+                t = -1;
+                break;
+            }
+        }
+        while (!tail.compareAndSet(t, t + 1));
+        if (t >= 0)
+        {
+            slots.set((int) t & MASK, fromId);
+        }
+        Thread w = waiter;
+        if (w != null)
+        {
+            LockSupport.unpark(w);
+        }
+    }
+
+    private boolean take ()
+    {
+        long h = head;
+        int i = (int) h & MASK;
+        long from = slots.get(i);
+        if (from != 0)
+        {
+            slots.lazySet(i, 0);
+            head = h + 1;
+            waker = from;
+            return true;
+        }
+        // empty, or a waker that claimed the slot hasn't stored yet.
+        for (long n = overflow.get(); n > 0; n = overflow.get())
+        {
+            if (overflow.compareAndSet(n, n - 1))
+            {
+                waker = 0;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Take a permit, wait for one if there is none. With <i>nanos</i> &gt;= 0
+     * wait at most that long. Returns false if the time ran out. Only the
+     * owner may call this.
+     */
+    public boolean await (long nanos) throws BASICRuntimeError
+    {
+        if (take())
+        {
+            return true;
+        }
+        long deadline = System.nanoTime() + nanos;
+        // a waker stores its permit before it looks at waiter, and we set
+        // waiter before we look again, so one of us sees the other.
+        waiter = Thread.currentThread();
+        try
+        {
+            while (!take())
+            {
+                if (nanos < 0)
+                {
+                    LockSupport.park(this);
+                }
+                else
+                {
+                    long left = deadline - System.nanoTime();
+                    if (left <= 0)
+                    {
+                        waker = 0;
+                        return false;
+                    }
+                    LockSupport.parkNanos(this, left);
+                }
+                if (Thread.interrupted())
+                {
+                    throw new BASICRuntimeError("Interrupted while sleeping.");
+                }
+            }
+            return true;
+        }
+        finally
+        {
+            waiter = null;
+        }
+    }
+
+    /**
+     * The thread id that gave the permit the last await() took, 0 if it
+     * timed out or the waker is not known.
+     */
+    public long waker ()
+    {
+        return waker;
+    }
+}
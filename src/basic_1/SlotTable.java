@@ -0,0 +1,40 @@
+package basic_1;
+
+import java.util.HashMap;
+
+/**
+ * Hands out a numeric slot for every distinct variable name of one
+ * program. The tokenizer asks for the slot when it creates a Variable, so
+ * by the time a program runs every variable reference already knows where
+ * its value lives in the variable frame of the Program.
+ * <p>
+ * Each Program has a table of its own, and every tokenizer that parses
+ * lines for it is given that table: LOAD and the lines typed into its
+ * window. A name keeps its slot for the life of the program, so
+ * slots stay valid across RENUMBER and lines typed in while it is stopped,
+ * and the frame only grows with the names the program really uses. The
+ * parse tasks of a big LOAD share the table, hence the locking.
+ */
+final class SlotTable {
+    private final HashMap<String, Integer> slots = new HashMap<>();
+
+    /**
+     * Return the slot of <i>name</i>, assigning a new one the first time
+     * the name is seen.
+     */
+    synchronized int slotOf(String name) {
+        Integer slot = slots.get(name);
+        if (slot == null) {
+            slot = slots.size();
+            slots.put(name, slot);
+        }
+        return slot;
+    }
+
+    /**
+     * Return the number of slots handed out so far.
+     */
+    synchronized int size() {
+        return slots.size();
+    }
+}
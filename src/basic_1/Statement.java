@@ -19,8 +19,11 @@ public abstract class Statement {
     public int line;
     private String orig; // original string that was parsed into this statement.
     // original string that was parsed into this statement.
+    private Renumberer renumbered; // applied to orig when the text is asked for
 
     public Statement nxt;  // if there are chained statements
+    public Statement succ; // fall-through successor, valid while the program is linked
+    int index; // position of this statement's line in the linked program, for the Profiler
     //private RedBlackTree vars; // variables used by this statement.
     // variables used by this statement.
 
@@ -38,21 +41,19 @@ public abstract class Statement {
 
     /**
      * This method does the actual statement execution. It works by calling the
-     * abstract function 'doit' which is defined in each statement subclass. The
-     * runtime error (if any) is caught so that the line number and statement
-     * can be attached to the result and then it is re-thrown.
+     * abstract function 'doit' which is defined in each statement subclass. A
+     * runtime error (if any) gets this statement attached and is re-thrown, a
+     * Java exception is turned into a runtime error. The program's run loop
+     * calls doit() itself and does this once for the whole run.
      */
     public Statement execute(Program pgm, InputStream in, PrintStream out) throws BASICRuntimeError {
-        Statement nxt;
         try {
-            nxt = doit(pgm, in, out);
-            //System.out.println(nxt);
+            return doit(pgm, in, out);
         } catch (BASICRuntimeError e) {
-            throw new BASICRuntimeError(this, e.getMsg());
+            throw e.at(this);
         } catch (Exception ex) {
-            throw new BASICRuntimeError(this, "Java Error: " + ex);
+            throw new BASICRuntimeError(this, ex);
         }
-        return nxt;
     }
 
     /**
@@ -62,15 +63,45 @@ public abstract class Statement {
      */
     public void addText(String t) {
         orig = t;
+        renumbered = null;
     }
 
     /**
      * Return the statement as a string.
      */
     public String asString() {
+        if (renumbered != null) {
+            orig = renumbered.rewrite(orig);
+            renumbered = null;
+        }
         return orig;
     }
 
+    /**
+     * Give the line this statement starts a new number, see Program.renumber().
+     * The statements are renumbered now, the text when it is next asked for.
+     */
+    void renumberLine(Renumberer r) {
+        if (renumbered != null) {
+            asString();
+        }
+        if (orig != null) {
+            renumbered = r;
+        }
+        renumber(r);
+        addLine(r.map(line));
+    }
+
+    /**
+     * Map the constant jump targets of this statement and its chained
+     * statements. Statements that jump override this.
+     */
+    public void renumber(Renumberer r) {
+        if (nxt != null) {
+            nxt.renumber(r);
+        }
+    }
+
     /**
      * Update line number information in this statement. Used to determine the
      * next line to execute.
@@ -82,6 +113,23 @@ public abstract class Statement {
         }
     }
 
+    /**
+     * Resolve this statement against a linked program. <i>follow</i> is the
+     * first statement of the next numbered line, it is where control falls
+     * through to once this statement and its chained statements are done.
+     * Statements that jump to constant line numbers override this to patch
+     * their targets to direct references.
+     */
+    public void link(Program pgm, Statement follow) {
+        index = pgm.linking;
+        if (nxt != null) {
+            succ = nxt;
+            nxt.link(pgm, follow);
+        } else {
+            succ = follow;
+        }
+    }
+
     /**
      * Return this statements line number.
      */
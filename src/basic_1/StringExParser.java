@@ -53,23 +53,50 @@ public class StringExParser
         }
     }
 
-    public static String printItemsToString (Program pgm, Vector<PrintItem> args) throws BASICRuntimeError
+    /**
+     * Append the print items to the end of <i>sb</i>, followed by a newline
+     * unless the last item is a ',' or ';'.
+     */
+    public static void appendPrintItems (Program pgm, Vector<PrintItem> args, StringBuilder sb) throws BASICRuntimeError
+    {
+        appendPrintItems(pgm, args, sb, true);
+    }
+
+    private static void appendPrintItems (Program pgm, Vector<PrintItem> args, StringBuilder sb, boolean lineEnd) throws BASICRuntimeError
     {
-        StringBuilder buff = new StringBuilder();
+        int lineStart = sb.length();
         PrintItem pi = null;
-        int col = 0;
         for (int i = 0; i < args.size(); i++)
         {
-            String z;
             pi = args.elementAt(i);
-            z = pi.value(pgm, col);
-            buff.append(z);
-            col += z.length();
+            pi.appendTo(pgm, sb, lineStart);
+        }
+        if (lineEnd && ((pi == null) || pi.needCR()))
+        {
+            sb.append('\n');
+        }
+    }
+
+    public static String printItemsToString (Program pgm, Vector<PrintItem> args) throws BASICRuntimeError
+    {
+        return printItemsToString(pgm, args, true);
+    }
+
+    /**
+     * The text of the items as PRINT makes it, with or without the line end.
+     */
+    public static String printItemsToString (Program pgm, Vector<PrintItem> args, boolean lineEnd) throws BASICRuntimeError
+    {
+        StringBuilder sb = pgm.stringBuffer();
+        int start = sb.length();
+        try
+        {
+            appendPrintItems(pgm, args, sb, lineEnd);
+            return sb.substring(start);
         }
-        if ((pi == null) || pi.needCR())
+        finally
         {
-            buff.append("\n");
+            sb.setLength(start);
         }
-        return buff.toString();
     }
 }
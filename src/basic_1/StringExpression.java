@@ -44,10 +44,15 @@ class StringExpression extends Expression {
     }
 
     String stringValue(Program pgm, int c)  throws BASICRuntimeError {
+        return buildString(pgm, c);
+    }
+
+    @Override
+    void appendTo(Program pgm, StringBuilder sb, int lineStart) throws BASICRuntimeError {
         if (oper == KeyWords.OP_ADD) {
-            String z = arg1.stringValue(pgm, c);
-            int c2 = c + z.length();
-            return z + arg2.stringValue(pgm, c2);
+            arg1.appendTo(pgm, sb, lineStart);
+            arg2.appendTo(pgm, sb, lineStart);
+            return;
         }
         throw new BASICRuntimeError("Unknown operator in string expression.");
     }
@@ -31,14 +31,20 @@ public class Variable extends Token {
 
     public final String name;
     private final SUBTYPE subType;
+    // slot of this name in the variable frame of its program, see SlotTable.
+    public final int slot;
+    private final boolean string;
+    private final boolean function;
 
     /*
      * If the variable is in the symbol table these values are
-     * initialized.
+     * initialized. Only one of the storage arrays is used, depending on
+     * the sub type.
      */
-    private double[] ndx;  // array indices.
+    private int[] dims;  // array bounds.
     private int[] mult; // array multipliers
     private double[] nArrayValues;
+    private int[] iArrayValues;
     private String[] sArrayValues;
 
     /*
@@ -56,9 +62,9 @@ public class Variable extends Token {
 
 
     /**
-     * Create a reference to this array.
+     * Create a reference to this array, <i>slot</i> is the slot of the name.
      */
-    Variable(String someName, Expression[] ee) {
+    Variable(String someName, int slot, Expression[] ee) {
         type = KeyWords.VARIABLE;
         if (someName.endsWith("$")) {
             subType = SUBTYPE.STRING_ARRAY;
@@ -68,13 +74,17 @@ public class Variable extends Token {
             subType = SUBTYPE.NUMBER_ARRAY;
         }
         name = someName;
+        this.slot = slot;
+        string = someName.endsWith("$");
+        function = someName.startsWith("fn");
         expns = ee;
     }
 
     /**
-     * Create a reference or scalar symbol table entry for this variable.
+     * Create a reference or scalar symbol table entry for this variable,
+     * <i>slot</i> is the slot of the name.
      */
-    Variable(String someName) {
+    Variable(String someName, int slot) {
         type = KeyWords.VARIABLE;
         if (someName.endsWith("$")) {
             subType = SUBTYPE.thSTRING;
@@ -84,56 +94,79 @@ public class Variable extends Token {
             subType = SUBTYPE.NUMBER;
         }
         name = someName;
+        this.slot = slot;
+        string = someName.endsWith("$");
+        function = someName.startsWith("fn");
     }
 
     /**
-     * Create a symbol table entry for this array.
+     * Create a symbol table entry for this array. Element (i, j, ...) is
+     * stored at (i-1) + (j-1)*dims[0] + ... so the first index runs fastest.
      */
-    Variable(String someName, double[] ii) {
-        int offset;
-        ndx = ii;
+    Variable(String someName, int slot, double[] ii) {
+        int size;
+        dims = new int[ii.length];
         mult = new int[ii.length];
+        for (int i = 0; i < ii.length; i++) {
+            dims[i] = (int) ii[i];
+        }
         mult[0] = 1;
-        offset = (int)ii[0];
+        size = dims[0];
         for (int i = 1; i < ii.length; i++) {
-            mult[i] = mult[i - 1] * (int)ii[i];
-            offset *= ii[i];
+            mult[i] = mult[i - 1] * dims[i - 1];
+            size *= dims[i];
         }
         name = someName;
+        this.slot = slot;
+        string = someName.endsWith("$");
+        function = someName.startsWith("fn");
         type = KeyWords.VARIABLE;
-        if (name.endsWith("$")) {
-            sArrayValues = new String[offset];
+        if (string) {
+            sArrayValues = new String[size];
             subType = SUBTYPE.STRING_ARRAY;
         } else if (name.endsWith("%")) {
-            nArrayValues = new double[offset];
+            iArrayValues = new int[size];
             subType = SUBTYPE.INTEGER_ARRAY;
         } else {
-            nArrayValues = new double[offset];
+            nArrayValues = new double[size];
             subType = SUBTYPE.NUMBER_ARRAY;
         }
     }
 
     /**
-     * This method takes an array of indices and computes a linear offset into
-     * the storage array. If either the number of indices are different, or
-     * there values exceed the max value here in the symbol table entry, a
-     * runtime error is thrown.
-     */
-    private int computeIndex(double[] ii) throws BASICRuntimeError {
-        int offset = 0;
-        if ((ndx == null) || (ii.length != ndx.length)) {
+     * Evaluate the index expressions of the array reference <i>ref</i> and
+     * compute the linear offset into the storage array. One and two
+     * dimensions, which is nearly every access, are done without a loop.
+     * If the number of indices is different, or their values exceed the
+     * bounds here in the symbol table entry, a runtime error is thrown.
+     */
+    private int computeIndex(Program pgm, Variable ref) throws BASICRuntimeError {
+        Expression[] ee = ref.expns;
+        if ((dims == null) || (ee == null) || (ee.length != dims.length)) {
             throw new BASICRuntimeError("Wrong number of indices.");
         }
-
-        for (int i = 0; i < ndx.length; i++) {
-            if ((ii[i] < 1) || (ii[i] > ndx[i])) {
-                throw new BASICRuntimeError("Index out of range.");
-            }
-            offset += (ii[i] - 1) * mult[i];
+        int offset = checkIndex(ee[0].value(pgm), 0);
+        if (ee.length == 1) {
+            return offset;
+        }
+        offset += checkIndex(ee[1].value(pgm), 1) * mult[1];
+        for (int i = 2; i < ee.length; i++) {
+            offset += checkIndex(ee[i].value(pgm), i) * mult[i];
         }
         return offset;
     }
 
+    /**
+     * Check index <i>x</i> against the bound of dimension <i>d</i> and
+     * return it zero based.
+     */
+    private int checkIndex(double x, int d) throws BASICRuntimeError {
+        if ((x < 1) || (x > dims[d])) {
+            throw new BASICRuntimeError("Index out of range.");
+        }
+        return (int) x - 1;
+    }
+
 // --Commented out by Inspection START (5/29/2022 8:00 PM):
 //    int numIndex() {
 //        if (!isArray()) {
@@ -150,18 +183,25 @@ public class Variable extends Token {
 //    }
 // --Commented out by Inspection STOP (5/29/2022 8:00 PM)
 
-    double numValue(double[] ii) throws BASICRuntimeError {
-        return nArrayValues[computeIndex(ii)];
+    /**
+     * Return the element of this array that <i>ref</i> points to.
+     */
+    double numValue(Program pgm, Variable ref) throws BASICRuntimeError {
+        int offset = computeIndex(pgm, ref);
+        if (iArrayValues != null) {
+            return iArrayValues[offset];
+        }
+        return nArrayValues[offset];
     }
 
     /**
      * Returns value as a string, even if this internally is a number.
      */
-    String stringValue(double[] ii) throws BASICRuntimeError {
+    String stringValue(Program pgm, Variable ref) throws BASICRuntimeError {
         if (subType == SUBTYPE.NUMBER_ARRAY || subType == SUBTYPE.INTEGER_ARRAY) {
-            return "" + nArrayValues[computeIndex(ii)];
+            return "" + numValue(pgm, ref);
         }
-        return sArrayValues[computeIndex(ii)];
+        return sArrayValues[computeIndex(pgm, ref)];
     }
 
     /**
@@ -177,31 +217,59 @@ public class Variable extends Token {
     }
 
     /**
-     * Set this variables value in the symbol table.
+     * Set the element of this array that <i>ref</i> points to. Integer
+     * arrays truncate the value like integer scalars do.
      */
-    <T> void setValue(T v) {
-        if (v instanceof Double)
-            nValue = (Double) v;
-        else if (v instanceof String)
-            sValue = (String) v;
+    void setValue(double v, Program pgm, Variable ref) throws BASICRuntimeError {
+        int offset = computeIndex(pgm, ref);
+        if (iArrayValues != null) {
+            iArrayValues[offset] = (int) v;
+        } else if (nArrayValues != null) {
+            nArrayValues[offset] = v;
+        } else {
+            throw new BASICRuntimeError("ARRAY storage not initialized.");
+        }
     }
 
-    <T> void setValue(T v, double[] ii) throws BASICRuntimeError {
-        int offset = computeIndex(ii);
-        if (nArrayValues == null) {
+    void setValue(String v, Program pgm, Variable ref) throws BASICRuntimeError {
+        int offset = computeIndex(pgm, ref);
+        if (sArrayValues == null) {
             throw new BASICRuntimeError("ARRAY storage not initialized.");
         }
-        if (v instanceof Double)
-            nArrayValues[offset] = (Double) v;
-        else if (v instanceof String)
-            sArrayValues[offset] = (String) v;
+        sArrayValues[offset] = v;
+    }
+
+    /**
+     * The storage of a numeric array, for whole array transfers, or null
+     * if this array is not of that kind.
+     */
+    double[] numbers() {
+        return nArrayValues;
+    }
+
+    int[] integers() {
+        return iArrayValues;
     }
 
     /**
      * Return true if this variable holds a string value.
      */
     public boolean isString() {
-        return name.endsWith("$");
+        return string;
+    }
+
+    /**
+     * Return true if this is a reference to a DEF FN function.
+     */
+    public boolean isFunction() {
+        return function;
+    }
+
+    /**
+     * Return true if this scalar holds an integer (% suffix).
+     */
+    boolean isInteger() {
+        return subType == SUBTYPE.INTEGER;
     }
 
     public boolean isArray() {
@@ -33,6 +33,11 @@ public class VariableExpression extends Expression
         v = a;
     }
 
+    Variable variable ()
+    {
+        return v;
+    }
+
     @Override
     public void print (PrintStream p)
     {
@@ -69,6 +74,19 @@ public class VariableExpression extends Expression
         return ("" + pgm.getVariable(v));
     }
 
+    @Override
+    void appendTo (Program pgm, StringBuilder sb, int lineStart) throws BASICRuntimeError
+    {
+        if (v.isString())
+        {
+            sb.append(pgm.getString(v));
+        }
+        else
+        {
+            sb.append(pgm.getVariable(v));
+        }
+    }
+
     /**
      * Add the value of this variable to the trace record.
      */
@@ -30,7 +30,7 @@ public class CLSStatement extends Statement
 
     @Override
     public Statement doit (Program pgm, InputStream in, PrintStream out) {
-        pgm.area.setText("");
+        pgm.area.clearScreen();
         return pgm.nextStatement(this);
     }
 }
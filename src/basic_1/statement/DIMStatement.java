@@ -54,7 +54,7 @@ public class DIMStatement extends Statement {
     public Statement doit(Program pgm, InputStream in, PrintStream out) throws BASICRuntimeError {
         for (int i = 0; i < args.size(); i++) {
             Variable vi = (Variable) (args.elementAt(i));
-            if (vi.name.startsWith("fn")) {
+            if (vi.isFunction()) {
                 throw new BASICRuntimeError("FN... not allowed as array name");
             }
             pgm.declareArray(vi);
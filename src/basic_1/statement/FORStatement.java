@@ -60,8 +60,12 @@ public class FORStatement extends Statement
 
     public Statement doit(Program pgm, InputStream in, PrintStream out) throws BASICRuntimeError
     {
-        pgm.setVariable(myVar, nExp.value(pgm));
-        pgm.push(this);
+        // the loop bounds are evaluated once and kept in the FOR frame.
+        double startValue = nExp.value(pgm);
+        double endValue = eExp.value(pgm);
+        double stepValue = sExp.value(pgm);
+        pgm.setVariable(myVar, startValue);
+        pgm.getControlStack().pushFor(this, startValue, endValue, stepValue);
         return pgm.nextStatement(this);
     }
 
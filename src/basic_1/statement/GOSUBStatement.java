@@ -42,6 +42,10 @@ public class GOSUBStatement extends Statement
 
     // This is the line number to transfer control too.
     private Expression lineTarget;
+    // the target was a line number standing alone, RENUMBER maps only those.
+    private boolean literal;
+    // Resolved destination if lineTarget is a constant and the program is linked.
+    private Statement target;
 
     public GOSUBStatement (LexicalTokenizer lt) throws BASICSyntaxError
     {
@@ -53,6 +57,10 @@ public class GOSUBStatement extends Statement
     public Statement doit(Program pgm, InputStream in, PrintStream out) throws BASICRuntimeError
     {
         pgm.push(this);
+        if (target != null && pgm.isLinked())
+        {
+            return target;
+        }
         Statement s;
         int line = (int) lineTarget.value(pgm);
         s = pgm.getStatement (line);
@@ -63,6 +71,32 @@ public class GOSUBStatement extends Statement
         throw new BASICRuntimeError("GOSUB non-existent line " + line + ".");
     }
 
+    /**
+     * Map a literal target to its new line number. A computed one, even if
+     * the optimizer folded it to a constant, is left as it is, like the
+     * text of the line is, see Renumberer.rewrite().
+     */
+    @Override
+    public void renumber(Renumberer r)
+    {
+        super.renumber(r);
+        if (literal)
+        {
+            lineTarget = new ConstantExpression(r.map((int) lineTarget.value(null)));
+        }
+    }
+
+    @Override
+    public void link(Program pgm, Statement follow)
+    {
+        super.link(pgm, follow);
+        target = null;
+        if (lineTarget instanceof ConstantExpression)
+        {
+            target = pgm.getStatement((int) lineTarget.value(pgm));
+        }
+    }
+
     public String unparse()
     {
         return keyword.toString()+" " + lineTarget;
@@ -73,6 +107,7 @@ public class GOSUBStatement extends Statement
      */
     private static void parse(GOSUBStatement s, LexicalTokenizer lt) throws BASICSyntaxError
     {
+        s.literal = lt.atLineNumber();
         s.lineTarget = s.getNumericArg(lt);
     }
 }
@@ -38,6 +38,10 @@ public class GOTOStatement extends Statement
 {
     // This is the line number to transfer control too.
     private Expression lineTarget;
+    // the target was a line number standing alone, RENUMBER maps only those.
+    private boolean literal;
+    // Resolved destination if lineTarget is a constant and the program is linked.
+    private Statement target;
 
     public GOTOStatement (LexicalTokenizer lt) throws BASICSyntaxError
     {
@@ -49,6 +53,10 @@ public class GOTOStatement extends Statement
     @Override
     public Statement doit(Program pgm, InputStream in, PrintStream out) throws BASICRuntimeError
     {
+        if (target != null && pgm.isLinked())
+        {
+            return target;
+        }
         Statement s;
         s = pgm.getStatement ((int) lineTarget.value(pgm));
         if (s != null)
@@ -58,6 +66,32 @@ public class GOTOStatement extends Statement
         throw new BASICRuntimeError("GOTO non-existent line " + lineTarget + ".");
     }
 
+    /**
+     * Map a literal target to its new line number. A computed one, even if
+     * the optimizer folded it to a constant, is left as it is, like the
+     * text of the line is, see Renumberer.rewrite().
+     */
+    @Override
+    public void renumber(Renumberer r)
+    {
+        super.renumber(r);
+        if (literal)
+        {
+            lineTarget = new ConstantExpression(r.map((int) lineTarget.value(null)));
+        }
+    }
+
+    @Override
+    public void link(Program pgm, Statement follow)
+    {
+        super.link(pgm, follow);
+        target = null;
+        if (lineTarget instanceof ConstantExpression)
+        {
+            target = pgm.getStatement((int) lineTarget.value(pgm));
+        }
+    }
+
     @Override
     public String unparse()
     {
@@ -69,6 +103,7 @@ public class GOTOStatement extends Statement
      */
     private static void parse(GOTOStatement s, LexicalTokenizer lt) throws BASICSyntaxError
     {
+        s.literal = lt.atLineNumber();
         s.lineTarget = s.getNumericArg(lt);
     }
 
@@ -48,6 +48,8 @@ public class IFStatement extends Statement
     private int lineTarget;
     private Expression nExp;
     private Statement thenClause;
+    // Resolved THEN line if the program is linked.
+    private Statement target;
 
     public IFStatement (LexicalTokenizer lt) throws BASICSyntaxError
     {
@@ -70,6 +72,10 @@ public class IFStatement extends Statement
             }
             else
             {
+                if (target != null && pgm.isLinked())
+                {
+                    return target;
+                }
                 s = pgm.getStatement(lineTarget);
                 if (s != null)
                 {
@@ -125,6 +131,42 @@ public class IFStatement extends Statement
         s.thenClause = ParseStatement.statement(lt);
     }
 
+    /**
+     * Link the THEN clause so it falls through to the next line, and resolve
+     * the THEN line number.
+     */
+    @Override
+    public void link(Program pgm, Statement follow)
+    {
+        super.link(pgm, follow);
+        target = null;
+        if (thenClause != null)
+        {
+            thenClause.link(pgm, follow);
+        }
+        else
+        {
+            target = pgm.getStatement(lineTarget);
+        }
+    }
+
+    /**
+     * Map the THEN line number, or the jumps of the THEN clause.
+     */
+    @Override
+    public void renumber(Renumberer r)
+    {
+        super.renumber(r);
+        if (thenClause != null)
+        {
+            thenClause.renumber(r);
+        }
+        else
+        {
+            lineTarget = r.map(lineTarget);
+        }
+    }
+
     /**
      * Update line number information in this statement. Used to determine the
      * next line to execute.
@@ -43,31 +43,28 @@ public class LOOPStatement extends Statement
 
 
     public Statement doit (Program pgm, InputStream in, PrintStream out) throws BASICRuntimeError {
-        Statement xs;
-        DOStatement s;
+        ControlStack stack = pgm.getControlStack();
 
-        //while (true) {
-            boolean v;
-            if (nExp == null)
-                v = true;
-            else
-                v = (nExp.value(pgm) != 0.0) ^ neg;
+        boolean v;
+        if (nExp == null)
+            v = true;
+        else
+            v = (nExp.value(pgm) != 0.0) ^ neg;
 
-            xs = pgm.pop();
-            if (xs == null) {
-                throw new BASICRuntimeError("DO without LOOP");
-            }
-
-            if (!(xs instanceof DOStatement)) {
-                throw new BASICRuntimeError("Bogus intervening statement: " + xs.asString());
-            }
-            s = (DOStatement) xs;
+        Statement xs = stack.peek();
+        if (xs == null) {
+            throw new BASICRuntimeError("DO without LOOP");
+        }
 
-            if (!v)
-                return pgm.nextStatement(this);
+        if (stack.kind() != ControlStack.DO) {
+            throw new BASICRuntimeError("Bogus intervening statement: " + xs.asString());
+        }
 
-            pgm.push(s);
-            return pgm.nextStatement(s);
-        //}
+        if (!v) {
+            stack.pop();
+            return pgm.nextStatement(this);
+        }
+        // the DO frame stays on the stack for the next round.
+        return pgm.nextStatement(xs);
     }
 }
@@ -69,19 +69,20 @@ public class NEXTStatement extends Statement
 
     public Statement doit (Program pgm, InputStream in, PrintStream out) throws BASICRuntimeError
     {
-        Statement xs;
+        ControlStack stack = pgm.getControlStack();
         FORStatement s;
 
         /*
-         *
+         * The matching FOR stays on the stack while the loop runs, inner
+         * loops that are left by this NEXT are dropped.
          */
-        do {
-            xs = pgm.pop();
+        while (true) {
+            Statement xs = stack.peek();
             if (xs == null) {
                 throw new BASICRuntimeError("NEXT without FOR");
             }
 
-            if (!(xs instanceof FORStatement)) {
+            if (stack.kind() != ControlStack.FOR) {
                 throw new BASICRuntimeError("Bogus intervening statement: " + xs.asString());
             }
             s = (FORStatement) xs;
@@ -89,50 +90,43 @@ public class NEXTStatement extends Statement
              * Since we have the policy set to be "optional next variable"
              * We use a little trick here to 'bond' the next at run time.
              * When we get here, if the next statement has no variable, we
-             * give it the variable of the first FOR statement we pop off
+             * give it the variable of the first FOR statement we find on
              * the stack.
              */
             if (myVar == null) {
                 myVar = s.myVar;
             }
-        } while (!s.myVar.name.equalsIgnoreCase(myVar.name));
+            if (s.myVar.slot == myVar.slot) {
+                break;
+            }
+            stack.pop();
+        }
 
-        double stepValue = s.sExp.value(pgm);
+        double startValue = stack.start();
+        double endValue = stack.end();
+        double stepValue = stack.step();
         if (stepValue == 0)
         {
             throw new BASICRuntimeError("step value of 0.0 in for loop.");
         }
-        pgm.setVariable(myVar, pgm.getVariable(myVar) + s.sExp.value(pgm));
-
-        double endValue = s.eExp.value(pgm);
+        pgm.setVariable(myVar, pgm.getVariable(myVar) + stepValue);
         double currentValue = pgm.getVariable(myVar);
-        double startValue = s.nExp.value(pgm);
 
+        boolean done;
         if (startValue >= endValue)
         {
-            if ((currentValue < endValue) || (currentValue > startValue))
-            {
-                return pgm.nextStatement(this);
-            }
-            else
-            {
-                pgm.push(s);
-                return pgm.nextStatement(s);
-            }
+            done = (currentValue < endValue) || (currentValue > startValue);
         }
         else
         {
-            if ((currentValue > endValue) || (currentValue < startValue))
-            {
-                return pgm.nextStatement(this);
-            }
-            else
-            {
-                pgm.push(s);
-                return pgm.nextStatement(s);
-            }
+            done = (currentValue > endValue) || (currentValue < startValue);
         }
-
+        if (done)
+        {
+            stack.pop();
+            return pgm.nextStatement(this);
+        }
+        return pgm.nextStatement(s);
     }
 
 }
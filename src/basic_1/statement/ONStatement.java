@@ -46,6 +46,8 @@ public class ONStatement extends Statement
     // This is the line number to transfer control too.
     private Expression nExp;
     private Vector<Token> args;
+    // Resolved destinations if the program is linked.
+    private Statement[] targets;
 
     public ONStatement (LexicalTokenizer lt) throws BASICSyntaxError
     {
@@ -65,8 +67,15 @@ public class ONStatement extends Statement
         {
             return pgm.nextStatement(this);
         }
-        Token z = args.elementAt(select);
-        s = pgm.getStatement((int) z.numValue());
+        if (targets != null && pgm.isLinked())
+        {
+            s = targets[select];
+        }
+        else
+        {
+            Token z = args.elementAt(select);
+            s = pgm.getStatement((int) z.numValue());
+        }
         if (s == null)
         {
             throw new BASICRuntimeError("ON " + keyword + " has illegal line target.");
@@ -78,6 +87,30 @@ public class ONStatement extends Statement
         return s;
     }
 
+    @Override
+    public void link(Program pgm, Statement follow)
+    {
+        super.link(pgm, follow);
+        targets = new Statement[args.size()];
+        for (int i = 0; i < targets.length; i++)
+        {
+            targets[i] = pgm.getStatement((int) args.elementAt(i).numValue());
+        }
+    }
+
+    /**
+     * Map the line numbers of the list.
+     */
+    @Override
+    public void renumber(Renumberer r)
+    {
+        super.renumber(r);
+        for (Token t : args)
+        {
+            t.nValue = r.map((int) t.numValue());
+        }
+    }
+
     /**
      * Parse ON Statement.
      */
@@ -52,19 +52,17 @@ public class PRINTStatement extends Statement
     @Override
     public Statement doit (Program pgm, InputStream in, PrintStream out) throws BASICRuntimeError
     {
-        PrintItem pi = null;
-        int col = 0;
-        for (int i = 0; i < args.size(); i++)
+        // the whole line is built in the program's buffer and written once.
+        StringBuilder sb = pgm.stringBuffer();
+        int start = sb.length();
+        try
         {
-            String z;
-            pi = args.elementAt(i);
-            z = pi.value(pgm, col);
-            out.print(z);
-            col += z.length();
+            StringExParser.appendPrintItems(pgm, args, sb);
         }
-        if ((pi == null) || pi.needCR())
+        finally
         {
-            out.print("\n");
+            // also on an error, so the line shows up to where it failed.
+            pgm.print(out, start);
         }
         return pgm.nextStatement(this);
     }
@@ -0,0 +1,75 @@
+package basic_1.statement;
+
+import basic_1.*;
+import misc.Misc;
+
+import java.io.InputStream;
+import java.io.PrintStream;
+
+/**
+ * The RECEIVE statement.
+ *
+ * Takes the next message another thread has sent to this one with SEND and
+ * puts it into a variable. If there is no message yet, the program waits
+ * for one; MSGS tells how many are waiting, so a program that must not
+ * wait checks that first. A number sent to a string variable becomes its
+ * text, a text sent to a numeric variable must be a number.
+ *
+ * Syntax : RECEIVE variable
+ *
+ * Runtime Errors: Message is not a number.
+ */
+public class RECEIVEStatement extends Statement
+{
+    private Variable target;
+
+    public RECEIVEStatement (LexicalTokenizer lt) throws BASICSyntaxError
+    {
+        super(KeyWords.RECEIVE);
+        if (lt.getBuffer() != null)
+        {
+            parse(this, lt);
+        }
+    }
+
+    private static void parse (RECEIVEStatement s, LexicalTokenizer lt) throws BASICSyntaxError
+    {
+        Token t = lt.nextToken();
+        if (t.typeNum() != KeyWords.VARIABLE)
+        {
+            throw new BASICSyntaxError("variable required");
+        }
+        s.target = (Variable) t;
+    }
+
+    public String unparse ()
+    {
+        return keyword.name() + " " + target;
+    }
+
+    @Override
+    protected Statement doit (Program pgm, InputStream in, PrintStream out) throws BASICRuntimeError
+    {
+        Object msg = Mailbox.of(Thread.currentThread().getId()).take();
+        if (target.isString())
+        {
+            pgm.setVariable(target, (msg instanceof Double) ? Misc.df.format(msg) : (String) msg);
+        }
+        else if (msg instanceof Double)
+        {
+            pgm.setVariable(target, (Double) msg);
+        }
+        else
+        {
+            try
+            {
+                pgm.setVariable(target, Double.parseDouble(((String) msg).trim()));
+            }
+            catch (NumberFormatException e)
+            {
+                throw new BASICRuntimeError("Message is not a number: " + msg);
+            }
+        }
+        return pgm.nextStatement(this);
+    }
+}
@@ -45,23 +45,22 @@ public class RETURNStatement extends Statement
     @Override
     public Statement doit(Program pgm, InputStream in, PrintStream out) throws BASICRuntimeError
     {
+        ControlStack stack = pgm.getControlStack();
         Statement s;
-        try
+        do
         {
-            do
+            if (stack.isEmpty())
             {
-                s = pgm.pop();
-                if ((s.keyword == KeyWords.GOSUB) || (s.keyword == KeyWords.ON_GOSUB))
-                {
-                    break;
-                }
+                throw new BASICRuntimeError("RETURN without GOSUB");
+            }
+            byte kind = stack.kind();
+            s = stack.pop();
+            if (kind == ControlStack.GOSUB)
+            {
+                break;
             }
-            while (true); //(s != null);
-        }
-        catch (Exception ex)
-        {
-            throw new BASICRuntimeError("RETURN without GOSUB");
         }
+        while (true);
         return pgm.nextStatement(s);
     }
 
@@ -0,0 +1,65 @@
+package basic_1.statement;
+
+import basic_1.*;
+
+import java.io.InputStream;
+import java.io.PrintStream;
+
+/**
+ * The RXARRAY statement.
+ *
+ * Reads n elements from a TCP connection into the first n elements of a
+ * numeric array, in the format TXARRAY sends. The program waits until
+ * all of them have arrived.
+ *
+ * Syntax : RXARRAY (socket$, array, n)
+ *
+ * Runtime Errors: no such array, n out of range, connection closed
+ * early, read failed.
+ */
+public class ReceiveArrayStatement extends Statement
+{
+    private Expression socketVariable;
+    private Variable array;
+    private Expression countVariable;
+
+    public ReceiveArrayStatement (LexicalTokenizer lt) throws BASICSyntaxError
+    {
+        super(KeyWords.RXARRAY);
+        if (lt.getBuffer() != null)
+        {
+            parse(this, lt);
+        }
+    }
+
+    private static void parse (ReceiveArrayStatement s, LexicalTokenizer lt) throws BASICSyntaxError
+    {
+        Token t = lt.nextToken();
+        if (!t.isSymbol('('))
+        {
+            throw new BASICSyntaxError("missing (");
+        }
+        s.socketVariable = s.getStringArg(lt);
+        s.checkComma(lt);
+        t = lt.nextToken();
+        if (!(t instanceof Variable) || ((Variable) t).isString())
+        {
+            throw new BASICSyntaxError("numeric array name required");
+        }
+        s.array = (Variable) t;
+        s.checkComma(lt);
+        s.countVariable = s.getNumericArg(lt);
+        t = lt.nextToken();
+        if (!t.isSymbol(')'))
+        {
+            throw new BASICSyntaxError("missing )");
+        }
+    }
+
+    @Override
+    protected Statement doit (Program pgm, InputStream in, PrintStream out) throws BASICRuntimeError
+    {
+        pgm.sockMap.receive(socketVariable.stringValue(pgm), pgm.getArray(array), (int) countVariable.value(pgm));
+        return pgm.nextStatement(this);
+    }
+}
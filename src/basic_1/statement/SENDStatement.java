@@ -1,8 +1,6 @@
 package basic_1.statement;
 
-import applications.BasicGUI;
 import basic_1.*;
-import streameditor.StreamingTextArea;
 
 import java.io.InputStream;
 import java.io.PrintStream;
@@ -39,11 +37,18 @@ public class SENDStatement extends Statement
     {
         Statement s;
         s = pgm.nextStatement(this);
-        StreamingTextArea cd = BasicGUI.streamMap.get((long) _thread.value(pgm));
-        if (cd != null)
+        Mailbox box = Mailbox.find((long) _thread.value(pgm));
+        if (box != null)
         {
-            String str = StringExParser.printItemsToString(pgm, _text);
-            cd.fakeIn(str+"\n");
+            Expression num = (_text.size() == 1) ? _text.get(0).numericExpression() : null;
+            if (num != null)
+            {
+                box.put(num.value(pgm));
+            }
+            else
+            {
+                box.put(StringExParser.printItemsToString(pgm, _text, false));
+            }
         }
         return s;
     }
@@ -5,18 +5,28 @@
  */
 package basic_1.statement;
 
-import applications.BasicGUI;
 import basic_1.*;
 
 import java.io.InputStream;
 import java.io.PrintStream;
-import java.util.concurrent.CountDownLatch;
 
+/**
+ * The SLEEP statement.
+ *
+ * SLEEP n waits n milliseconds. SLEEP * waits until another thread wakes
+ * this one with WAKEUP, or goes on at once if that has happened already;
+ * SLEEP *, t gives up after t milliseconds. WAKER tells which thread's
+ * wakeup ended the wait, 0 if it timed out. See Signal.
+ *
+ * Syntax : SLEEP n | SLEEP * [, timeout]
+ */
 public class SLEEPStatement extends Statement
 {
     // This is the sleep time
     private int lineTarget;
     private final static int FOREVER = -1;
+    // time limit of SLEEP *, or null
+    private Expression timeout;
 
     public SLEEPStatement (LexicalTokenizer lt) throws BASICSyntaxError
     {
@@ -34,18 +44,8 @@ public class SLEEPStatement extends Statement
         {
             if (lineTarget == FOREVER)
             {
-                long id = Thread.currentThread().getId();
-                CountDownLatch cd = new CountDownLatch(1);
-                BasicGUI.latchMap.put(id, cd);
-                try
-                {
-                    cd.await();
-                }
-                catch (InterruptedException ex)
-                {
-                    throw new BASICRuntimeError("cd wait interrupted");
-                }
-                BasicGUI.latchMap.remove(id);
+                long nanos = (timeout == null) ? -1 : Math.max(0, (long) (timeout.value(pgm) * 1e6));
+                Signal.of(Thread.currentThread().getId()).await(nanos);
             }
             else
                 Thread.sleep(lineTarget);
@@ -60,6 +60,10 @@ public class SLEEPStatement extends Statement
     @Override
     public String unparse()
     {
+        if (lineTarget == FOREVER)
+        {
+            return keyword.name() + " *" + ((timeout == null) ? "" : ", " + timeout);
+        }
         return keyword.name() + " " + lineTarget;
     }
 
@@ -72,6 +76,15 @@ public class SLEEPStatement extends Statement
         if (t.stringValue() != null && t.stringValue().equals("*"))
         {
             s.lineTarget = FOREVER;  // magic value
+            t = lt.nextToken();
+            if (t.isSymbol(','))
+            {
+                s.timeout = s.getNumericArg(lt);
+            }
+            else
+            {
+                lt.unGetToken();
+            }
             return;
         }
         if (t.typeNum() != KeyWords.CONSTANT)
@@ -33,10 +33,10 @@ public class SockModeStatement extends Statement
     @Override
     protected Statement doit(Program pgm, InputStream in, PrintStream out) throws BASICRuntimeError
     {
-        Program.ExtendedSocket ext = pgm.sockMap.get (socketVariable.stringValue(pgm));
+        String sock = socketVariable.stringValue(pgm);
         int n = (int) modeVariable.value(pgm);
         if (n == 0 || n == 1)
-            ext.textMode = (n==1);
+            pgm.sockMap.setTextMode(sock, n==1);
         else
             throw new BASICRuntimeError("only 0 or 1 allowed");
         return pgm.nextStatement(this);
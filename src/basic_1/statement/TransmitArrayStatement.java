@@ -0,0 +1,64 @@
+package basic_1.statement;
+
+import basic_1.*;
+
+import java.io.InputStream;
+import java.io.PrintStream;
+
+/**
+ * The TXARRAY statement.
+ *
+ * Sends the first n elements of a numeric array over a TCP connection,
+ * as big-endian doubles, or 32 bit ints for an integer (%) array. The
+ * array is named without indices.
+ *
+ * Syntax : TXARRAY (socket$, array, n)
+ *
+ * Runtime Errors: no such array, n out of range, write failed.
+ */
+public class TransmitArrayStatement extends Statement
+{
+    private Expression socketVariable;
+    private Variable array;
+    private Expression countVariable;
+
+    public TransmitArrayStatement (LexicalTokenizer lt) throws BASICSyntaxError
+    {
+        super(KeyWords.TXARRAY);
+        if (lt.getBuffer() != null)
+        {
+            parse(this, lt);
+        }
+    }
+
+    private static void parse (TransmitArrayStatement s, LexicalTokenizer lt) throws BASICSyntaxError
+    {
+        Token t = lt.nextToken();
+        if (!t.isSymbol('('))
+        {
+            throw new BASICSyntaxError("missing (");
+        }
+        s.socketVariable = s.getStringArg(lt);
+        s.checkComma(lt);
+        t = lt.nextToken();
+        if (!(t instanceof Variable) || ((Variable) t).isString())
+        {
+            throw new BASICSyntaxError("numeric array name required");
+        }
+        s.array = (Variable) t;
+        s.checkComma(lt);
+        s.countVariable = s.getNumericArg(lt);
+        t = lt.nextToken();
+        if (!t.isSymbol(')'))
+        {
+            throw new BASICSyntaxError("missing )");
+        }
+    }
+
+    @Override
+    protected Statement doit (Program pgm, InputStream in, PrintStream out) throws BASICRuntimeError
+    {
+        pgm.sockMap.transmit(socketVariable.stringValue(pgm), pgm.getArray(array), (int) countVariable.value(pgm));
+        return pgm.nextStatement(this);
+    }
+}
@@ -3,10 +3,7 @@ package basic_1.statement;
 import basic_1.*;
 
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.io.PrintStream;
-import java.io.PrintWriter;
-import java.net.Socket;
 
 public class TransmitStatement extends Statement
 {
@@ -36,20 +33,7 @@ public class TransmitStatement extends Statement
     @Override
     protected Statement doit(Program pgm, InputStream in, PrintStream out) throws BASICRuntimeError
     {
-        Program.ExtendedSocket ext = pgm.sockMap.get (socketVariable.stringValue(pgm));
-        String txt = textVariable.stringValue(pgm);
-        try {
-            OutputStream os = ext.getSocket().getOutputStream();
-            if (ext.textMode) {
-                PrintWriter pw = new PrintWriter(os, true);
-                pw.println(txt);
-            } else {
-                byte[] dat = txt.getBytes();
-                os.write(dat);
-            }
-        } catch (Exception e) {
-            System.out.println("socket tx fail: "+ e);
-        }
+        pgm.sockMap.transmit(socketVariable.stringValue(pgm), textVariable.stringValue(pgm));
         return pgm.nextStatement(this);
     }
 }
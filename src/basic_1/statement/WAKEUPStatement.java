@@ -1,18 +1,19 @@
 package basic_1.statement;
 
-import applications.BasicGUI;
 import basic_1.*;
 
 import java.io.InputStream;
 import java.io.PrintStream;
-import java.util.concurrent.CountDownLatch;
 
 /**
  * Created by Administrator on 4/24/2016.
+ *
+ * WAKEUP tid gives thread tid a permit for its next SLEEP *, see Signal.
+ * A thread id that is not a BASIC thread is ignored.
  */
 public class WAKEUPStatement extends Statement
 {
-    private int lineTarget;
+    private Expression target;
 
     public WAKEUPStatement (LexicalTokenizer lt) throws BASICSyntaxError
     {
@@ -28,29 +29,30 @@ public class WAKEUPStatement extends Statement
      */
     private static void parse (WAKEUPStatement s, LexicalTokenizer lt) throws BASICSyntaxError
     {
-        Token t = lt.nextToken();
-        if (t.typeNum() != KeyWords.CONSTANT)
+        try
+        {
+            s.target = s.getNumericArg(lt);
+        }
+        catch (BASICSyntaxError e)
         {
             throw new BASICSyntaxError("thread ID required");
         }
-        s.lineTarget = (int) t.numValue();
     }
 
     public String unparse ()
     {
-        return keyword.name() +" " + lineTarget;
+        return keyword.name() +" " + target;
     }
 
     @Override
-    public Statement doit (Program pgm, InputStream in, PrintStream out) {
-        Statement s;
-        s = pgm.nextStatement(this);
-        CountDownLatch cd = BasicGUI.latchMap.get((long) lineTarget);
-        if (cd != null)
+    public Statement doit (Program pgm, InputStream in, PrintStream out) throws BASICRuntimeError
+    {
+        Signal sig = Signal.find((long) target.value(pgm));
+        if (sig != null)
         {
-            cd.countDown();
+            sig.wake(Thread.currentThread().getId());
         }
-        return s;
+        return pgm.nextStatement(this);
     }
 
 }
@@ -3,7 +3,6 @@
  */
 package misc;
 
-import org.apache.commons.lang.StringUtils;
 
 import javax.sound.sampled.AudioSystem;
 import javax.sound.sampled.Clip;
@@ -19,7 +18,6 @@ import java.util.concurrent.atomic.AtomicBoolean;
 
 import static java.awt.Toolkit.getDefaultToolkit;
 import static java.awt.datatransfer.DataFlavor.stringFlavor;
-import static org.apache.commons.lang.StringUtils.*;
 
 /**
  * @author Administrator
@@ -35,6 +33,9 @@ public final class Misc {
 
     private static final ExecutorService globalExecutor = Executors.newCachedThreadPool(); //Executors.newFixedThreadPool(20);
 
+    // BASIC interpreters and their terminals, see executeBasic().
+    private static final ExecutorService basicExecutor = basicExecutor();
+
     public static FutureTask<?> execute(Runnable r) {
 //        if (getExecutorFreeSlots() <= 0)
 //        {
@@ -43,6 +44,31 @@ public final class Misc {
         return (FutureTask<?>) globalExecutor.submit(r);
     }
 
+    /**
+     * Run a BASIC interpreter, or the renderer of its terminal. With
+     * -Dbasic.virtual=true each one gets a virtual thread of its own, if
+     * the JVM has them (Java 21 and up); a blocked program then parks and
+     * leaves its carrier to the others, so hundreds of them can run in one
+     * JVM. Otherwise this is the same as execute().
+     */
+    public static FutureTask<?> executeBasic(Runnable r) {
+        FutureTask<?> task = new FutureTask<>(r, null);
+        basicExecutor.execute(task);
+        return task;
+    }
+
+    private static ExecutorService basicExecutor() {
+        if (Boolean.getBoolean("basic.virtual")) {
+            try {
+                // looked up by reflection, the code is built for Java 8.
+                return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException e) {
+                System.err.println("No virtual threads in this JVM, BASIC runs on platform threads");
+            }
+        }
+        return globalExecutor;
+    }
+
 //    private static int getExecutorFreeSlots ()
 //    {
 //        int tc = ((ThreadPoolExecutor) globalExecutor).getActiveCount();
@@ -56,33 +82,42 @@ public final class Misc {
         return "  " + myFormatter.format(bytes);
     }
 
-    private static String formatBlHelper(String in) {
-        in = in.replaceAll("\\s{2,}", " ").trim();
-        in = in.replace("\t", " ");
-        String in2;
-        do {
-            in2 = in;
-            in = in.replaceAll(", | ,", ",");
-        } while (!in.equals(in2));
-        return in.toUpperCase();
-    }
-
     /**
-     * remove multiple blanks, exxcept between "
+     * Normalize a line of BASIC in one pass: outside of "quotes" runs of
+     * blanks become one blank, blanks next to a comma are dropped, the
+     * line is trimmed and everything is made upper case. Quoted text is
+     * copied as it is.
      *
      * @param in raw input line
      * @return trimmed line
      */
     public static String formatBasicLine(String in) {
-        String[] quoted = StringUtils.substringsBetween(in, "\"", "\"");
-        if (quoted == null)
-            return formatBlHelper(in);
-        for (int s = 0; s < quoted.length; s++)
-            in = in.replace(quoted[s], "#" + s);
-        in = formatBlHelper(in);
-        for (int s = 0; s < quoted.length; s++)
-            in = in.replace("#" + s, quoted[s]);
-        return in;
+        int len = in.length();
+        StringBuilder sb = new StringBuilder(len);
+        boolean quoted = false;
+        boolean blank = false;  // a blank is pending
+        for (int i = 0; i < len; i++) {
+            char c = in.charAt(i);
+            if (quoted) {
+                sb.append(c);
+                quoted = (c != '"');
+                continue;
+            }
+            if (Character.isWhitespace(c)) {
+                blank = true;
+                continue;
+            }
+            if (blank) {
+                blank = false;
+                int last = sb.length() - 1;
+                if (c != ',' && last >= 0 && sb.charAt(last) != ',') {
+                    sb.append(' ');
+                }
+            }
+            sb.append(Character.toUpperCase(c));
+            quoted = (c == '"');
+        }
+        return sb.toString();
     }
 
     /**
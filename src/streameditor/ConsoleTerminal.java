@@ -0,0 +1,86 @@
+package streameditor;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A Terminal on plain streams, for running BASIC programs without a GUI.
+ * Text sent to this terminal with fakeIn() is read before anything from the
+ * underlying input stream.
+ */
+public class ConsoleTerminal implements Terminal {
+    private final ConcurrentLinkedQueue<Character> injected = new ConcurrentLinkedQueue<>();
+    private final InputStream source;
+    private final PrintStream out;
+
+    private final InputStream in = new InputStream() {
+        @Override
+        public int read() throws IOException {
+            Character c = injected.poll();
+            if (c != null) {
+                return c;
+            }
+            return source.read();
+        }
+
+        @Override
+        public int available() throws IOException {
+            return injected.size() + source.available();
+        }
+    };
+
+    public ConsoleTerminal(InputStream in, PrintStream out) {
+        this.source = in;
+        this.out = out;
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        return in;
+    }
+
+    @Override
+    public OutputStream getOutputStream() {
+        return out;
+    }
+
+    @Override
+    public PrintStream getPrintStream() {
+        return out;
+    }
+
+    /**
+     * Return the next character if one is waiting, without blocking.
+     */
+    @Override
+    public char pollKey() {
+        try {
+            if (in.available() > 0) {
+                int c = in.read();
+                if (c >= 0) {
+                    return (char) c;
+                }
+            }
+        } catch (IOException ignored) {
+        }
+        return 0xffff;
+    }
+
+    @Override
+    public void fakeIn(String s) {
+        for (int n = 0; n < s.length(); n++) {
+            injected.add(s.charAt(n));
+        }
+    }
+
+    @Override
+    public void setColors(int fore, int back) {
+    }
+
+    @Override
+    public void clearScreen() {
+    }
+}
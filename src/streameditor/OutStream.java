@@ -7,31 +7,159 @@ package streameditor;
 
 import java.io.OutputStream;
 import java.io.Serializable;
-import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
+ * Output side of the text area. Bytes written by the BASIC program go into
+ * a char ring buffer, the renderer thread of the StreamingTextArea takes
+ * out everything that is there in one go.
+ * <p>
+ * A writer blocks while the ring is full, so a fast program can't run
+ * away from the screen. Waiting is done on a lock, not on a monitor, so a
+ * program on a virtual thread parks there instead of pinning its carrier.
  *
  * @author Administrator
  */
 class OutStream extends OutputStream implements Serializable
 {
-    public final ArrayBlockingQueue<Character> buffer = new ArrayBlockingQueue<>(128, true);
+    private static final int CAPACITY = 16384;
 
+    private final char[] ring = new char[CAPACITY];
+    private int head = 0;   // next char to take
+    private int count = 0;  // chars in the ring
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
 
     public OutStream ()
     {
     }
 
-
     @Override
     public void write (int bt)
     {
+        lock.lock();
+        try
+        {
+            while (count == CAPACITY)
+            {
+                notFull.await();
+            }
+            ring[(head + count) % CAPACITY] = (char) (bt & 0xff);
+            if (count++ == 0)
+            {
+                notEmpty.signal();
+            }
+        }
+        catch (InterruptedException ignored)
+        {
+            Thread.currentThread().interrupt();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void write (byte[] b, int off, int len)
+    {
+        lock.lock();
         try
         {
-            buffer.put((char)bt);
+            while (len > 0)
+            {
+                while (count == CAPACITY)
+                {
+                    notFull.await();
+                }
+                boolean wasEmpty = (count == 0);
+                int n = Math.min(len, CAPACITY - count);
+                int tail = (head + count) % CAPACITY;
+                for (int i = 0; i < n; i++)
+                {
+                    ring[tail] = (char) (b[off++] & 0xff);
+                    if (++tail == CAPACITY)
+                    {
+                        tail = 0;
+                    }
+                }
+                count += n;
+                len -= n;
+                if (wasEmpty)
+                {
+                    notEmpty.signal();
+                }
+            }
         }
         catch (InterruptedException ignored)
         {
+            Thread.currentThread().interrupt();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Wait until there is output and return all of it.
+     *
+     * @throws InterruptedException if the renderer thread was interrupted
+     */
+    String take () throws InterruptedException
+    {
+        lock.lock();
+        try
+        {
+            while (count == 0)
+            {
+                notEmpty.await();
+            }
+            return drain();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Return whatever output is there without waiting, may be empty.
+     */
+    String poll ()
+    {
+        lock.lock();
+        try
+        {
+            return drain();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    private String drain ()
+    {
+        String s;
+        int first = Math.min(count, CAPACITY - head);
+        if (first == count)
+        {
+            s = new String(ring, head, count);
+        }
+        else
+        {
+            s = new String(ring, head, first) + new String(ring, 0, count - first);
+        }
+        boolean wasFull = (count == CAPACITY);
+        head = (head + count) % CAPACITY;
+        count = 0;
+        if (wasFull)
+        {
+            notFull.signalAll();
         }
+        return s;
     }
 }
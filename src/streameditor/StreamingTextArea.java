@@ -5,16 +5,20 @@ import misc.Misc;
 import javax.swing.*;
 import javax.swing.event.CaretEvent;
 import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.Element;
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
 import java.io.*;
 import java.util.Objects;
 import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 
 /**
  * @author Administrator
  */
-public class StreamingTextArea extends JTextArea implements Runnable {
+public class StreamingTextArea extends JTextArea implements Runnable, Terminal {
     public final ArrayBlockingQueue<String> lineBuffer = new ArrayBlockingQueue<>(128, true);
 
     private final InStream in;
@@ -25,6 +29,10 @@ public class StreamingTextArea extends JTextArea implements Runnable {
     private int previousLinenum = 0;
     volatile private boolean basicIsRunning = false;
     private boolean manual_interrupt;
+    // output is put on screen at most this often.
+    private static final long FRAME_MILLIS = 20;
+    // lines kept on screen, 0 keeps everything. Set by SCROLLBACK.
+    private volatile int scrollback = Integer.getInteger("basic.scrollback", 10000);
 
     public StreamingTextArea() {
         super();
@@ -35,11 +43,24 @@ public class StreamingTextArea extends JTextArea implements Runnable {
         startThread();
     }
 
+    @Override
     public void setColors(int fore, int back) {
         setBackground(new java.awt.Color(back));
         setForeground(new java.awt.Color(fore));
     }
 
+    /**
+     * Limit the number of lines kept on screen. Older lines are dropped from
+     * the top as output comes in. 0 means no limit.
+     */
+    public void setScrollback(int lines) {
+        scrollback = Math.max(0, lines);
+    }
+
+    public int getScrollback() {
+        return scrollback;
+    }
+
     public String getPreviousLine() {
         try {
             int start = getLineStartOffset(previousLinenum);
@@ -102,17 +123,32 @@ public class StreamingTextArea extends JTextArea implements Runnable {
 
     public final void startThread() {
         // thread = null;
-        Misc.execute(this);
+        Misc.executeBasic(this);
+    }
+
+    @Override
+    public char pollKey() {
+        char c = lastKey;
+        lastKey = 0xffff;
+        return c;
     }
 
+    @Override
+    public void clearScreen() {
+        setText("");
+    }
+
+    @Override
     public InputStream getInputStream() {
         return in;
     }
 
+    @Override
     public PrintStream getPrintStream() {
         return new PrintStream(out);
     }
 
+    @Override
     public OutputStream getOutputStream() {
         return out;
     }
@@ -131,6 +167,7 @@ public class StreamingTextArea extends JTextArea implements Runnable {
         }
     }
 
+    @Override
     public void fakeIn(String s) {
         System.out.println("fake " + s);
         try {
@@ -160,33 +197,94 @@ public class StreamingTextArea extends JTextArea implements Runnable {
     }
 
 
+    /**
+     * The renderer. It waits for output, gives the program one frame time
+     * to produce more, then appends everything in a single document update
+     * on the event dispatch thread.
+     */
     @Override
     public void run() {
         thread = Thread.currentThread();
         System.out.println("stream thread start");
+        long nextFrame = 0;
         while (true) //!thread.isInterrupted())
         {
-            char c;
+            String text;
             try {
-                c = out.buffer.take();
+                text = out.take();
+                long wait = nextFrame - System.currentTimeMillis();
+                if (wait > 0) {
+                    Thread.sleep(wait);
+                    text = text + out.poll();
+                }
             } catch (InterruptedException ex) {
                 if (manual_interrupt) {
-                    c = 0;
+                    manual_interrupt = false;
+                    continue;
                 } else {
                     System.out.println("stream thread ended");
                     return;
                 }
             }
+            nextFrame = System.currentTimeMillis() + FRAME_MILLIS;
+            render(text);
+        }
+    }
+
+    /**
+     * Insert <i>text</i> at the caret on the event dispatch thread and
+     * wait until it is done, so a program can't get ahead of the screen by
+     * more than the output ring. The wait is on a FutureTask rather than
+     * invokeAndWait(), which waits on a monitor and would pin the carrier
+     * of a virtual renderer thread.
+     */
+    private void render(String text) {
+        FutureTask<Void> update = new FutureTask<>(() -> {
             try {
                 synchronized (this) {
                     int cp = getCaretPosition();
-                    insert("" + c, cp);
-                    setCaretPosition(cp + 1);
+                    insert(text, cp);
+                    setCaretPosition(cp + text.length());
+                    trimScrollback();
                 }
             } catch (Exception ex) {
-                System.out.println(ex + " -- " + c);
+                System.out.println(ex + " -- " + text);
             }
+        }, null);
+        try {
+            if (SwingUtilities.isEventDispatchThread()) {
+                update.run();
+            } else {
+                SwingUtilities.invokeLater(update);
+                update.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            System.out.println(e.getCause() + " -- " + text);
+        }
+    }
+
+    /**
+     * Drop lines from the top once there are more than the scrollback limit.
+     * The document's root element already indexes the lines, so finding the
+     * cut is cheap; cutting only every limit/8 lines keeps the cost of the
+     * remove spread thin over the appends.
+     */
+    private void trimScrollback() throws BadLocationException {
+        int limit = scrollback;
+        if (limit <= 0) {
+            return;
+        }
+        Document doc = getDocument();
+        Element root = doc.getDefaultRootElement();
+        int lines = root.getElementCount();
+        if (lines <= limit + Math.max(1, limit / 8)) {
+            return;
         }
+        // the caret is a document position and moves along with the cut.
+        int cut = root.getElement(lines - limit).getStartOffset();
+        doc.remove(0, cut);
     }
 
     public synchronized void startRunMode() {
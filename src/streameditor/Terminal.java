@@ -0,0 +1,49 @@
+package streameditor;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+/**
+ * The console a BASIC program talks to. The GUI uses a StreamingTextArea,
+ * batch jobs use a ConsoleTerminal on plain streams, so the interpreter
+ * itself never needs Swing.
+ */
+public interface Terminal {
+    /**
+     * Keyboard input, INPUT reads from here.
+     */
+    InputStream getInputStream();
+
+    /**
+     * Program output.
+     */
+    OutputStream getOutputStream();
+
+    /**
+     * Program output as a PrintStream, also used for error messages.
+     */
+    PrintStream getPrintStream();
+
+    /**
+     * Return the last key typed and forget it, or 0xffff if no key was
+     * typed since the last call (INKEY$).
+     */
+    char pollKey();
+
+    /**
+     * Feed a line of text into the input, as if the user had typed it
+     * (SEND).
+     */
+    void fakeIn(String s);
+
+    /**
+     * Set text colors (COLOR), terminals without colors ignore this.
+     */
+    void setColors(int fore, int back);
+
+    /**
+     * Clear the screen (CLS).
+     */
+    void clearScreen();
+}